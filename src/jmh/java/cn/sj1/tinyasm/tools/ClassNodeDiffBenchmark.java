@@ -0,0 +1,56 @@
+package cn.sj1.tinyasm.tools;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Classes per second {@link ClassNodeDiff} compares, over the classes of
+ * {@link TinyASMifierBenchmark}. Both sides are equal, the common case in CI, so
+ * every method body is compared to its end.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassNodeDiffBenchmark {
+
+	@Param({ "cn.sj1.tinyasm.tools.SimpleSample", "cn.sj1.tinyasm.tools.LabelSample", "cn.sj1.tinyasm.tools.Pojo", "org.objectweb.asm.ClassReader", "org.objectweb.asm.MethodWriter",
+			"org.objectweb.asm.SymbolTable" })
+	public String className;
+
+	byte[] code;
+	ClassNode expected;
+	ClassNode actual;
+
+	@Setup
+	public void setup() {
+		code = TinyAsmTestUtils.readClassBytes(className);
+		expected = ClassNodeDiff.read(code);
+		actual = ClassNodeDiff.read(code);
+	}
+
+	/** Reads both classes and compares them, as the round trip verifier does. */
+	@Benchmark
+	public ClassNodeDiff.Result compareBytes() {
+		return ClassNodeDiff.compare(code, code);
+	}
+
+	@Benchmark
+	public ClassNodeDiff.Result compareNodes() {
+		return ClassNodeDiff.compare(expected, actual);
+	}
+}
@@ -0,0 +1,78 @@
+package cn.sj1.tinyasm.tools;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time and, with the GC profiler, allocation per stage of the {@link RefineCode}
+ * pipeline over ASMifier output from 10 KB to 5 MB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RefineCodeBenchmark {
+
+	@Param({ "10240", "102400", "1048576", "5242880" })
+	public int size;
+
+	String input;
+	String excluded;
+	String replaced;
+
+	@Setup
+	public void setup() {
+		input = RefineCodeCorpus.asmifierOutput(size);
+		excluded = RefineCode.excludeLineNumber(input);
+		replaced = RefineCode.replaceAll(excluded);
+	}
+
+	@Benchmark
+	public String excludeLineNumber() {
+		return RefineCode.excludeLineNumber(input);
+	}
+
+	@Benchmark
+	public String replaceAll() {
+		return RefineCode.replaceAll(excluded);
+	}
+
+	@Benchmark
+	public String refineCode() {
+		return RefineCode.refineCode(excluded);
+	}
+
+	@Benchmark
+	public String refineCodeParallel() {
+		return RefineCode.refineCode(RefineCode.getDefaultRules(), excluded, ForkJoinPool.commonPool());
+	}
+
+	@Benchmark
+	public String matchTypeDescription() {
+		return RefineCode.matchTypeDescription(replaced);
+	}
+
+	@Benchmark
+	public String matchTypeInternalNameToClassName() {
+		return RefineCode.matchTypeInternalNameToClassName(replaced);
+	}
+
+	@Benchmark
+	public String getClasName() {
+		return RefineCode.getClasName(input);
+	}
+}
@@ -0,0 +1,35 @@
+package cn.sj1.tinyasm.tools;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.util.ASMifier;
+import org.objectweb.asm.util.TraceClassVisitor;
+
+/**
+ * ASMifier output of real classes, repeated until the requested size, as input
+ * for the {@link RefineCode} benchmarks.
+ */
+class RefineCodeCorpus {
+
+	static final String[] CLASSES = { "org.objectweb.asm.ClassReader", "org.objectweb.asm.MethodWriter", "org.objectweb.asm.SymbolTable", "org.objectweb.asm.Frame",
+			"org.objectweb.asm.Type", "org.objectweb.asm.ClassWriter", "cn.sj1.tinyasm.tools.Pojo", "cn.sj1.tinyasm.tools.LabelSample" };
+
+	/** @return at least size chars of ASMifier output, cut after a whole line. */
+	static String asmifierOutput(int size) {
+		StringBuilder sb = new StringBuilder(size + 65536);
+		for (int i = 0; sb.length() < size; i = (i + 1) % CLASSES.length) {
+			sb.append(asmifierOutput(CLASSES[i]));
+		}
+		int end = sb.indexOf("\n", size);
+		return sb.substring(0, end < 0 ? sb.length() : end + 1);
+	}
+
+	static String asmifierOutput(String className) {
+		StringWriter sw = new StringWriter();
+		ClassReader cr = new ClassReader(TinyAsmTestUtils.readClassBytes(className));
+		cr.accept(new TraceClassVisitor(null, new ASMifier(), new PrintWriter(sw)), ClassReader.EXPAND_FRAMES);
+		return sw.toString();
+	}
+}
@@ -0,0 +1,61 @@
+package cn.sj1.tinyasm.tools;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of every single rule of {@link RefineCode#replaceAll(String)}, applied
+ * the way replaceAll applies it, to the output of
+ * {@link RefineCode#excludeLineNumber(String)}. Rules are numbered in the order
+ * of {@link RefineCode#prepareMatches(RefineRuleSet.Builder)}; pick some with {@code -p rule=3,17}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class RefineRuleBenchmark {
+
+	@Param({ "102400" })
+	public int size;
+
+	/** Number of default rules, the values of {@link #rule} are 0 to RULES - 1. */
+	static final int RULES = 77;
+
+	@Param({ "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15", "16", "17", "18", "19", "20", "21", "22", "23", "24", "25",
+			"26", "27", "28", "29", "30", "31", "32", "33", "34", "35", "36", "37", "38", "39", "40", "41", "42", "43", "44", "45", "46", "47", "48", "49", "50", "51",
+			"52", "53", "54", "55", "56", "57", "58", "59", "60", "61", "62", "63", "64", "65", "66", "67", "68", "69", "70", "71", "72", "73", "74", "75", "76" })
+	public int rule;
+
+	String input;
+	String match;
+	String replace;
+
+	@Setup
+	public void setup() {
+		int rules = RefineCode.getDefaultRules().getMatches().size();
+		if (rules != RULES) {
+			throw new RuntimeException("RefineCode has " + rules + " default rules, " + RULES + " expected: update RULES and the values of rule");
+		}
+		input = RefineCode.excludeLineNumber(RefineCodeCorpus.asmifierOutput(size));
+		match = RefineCode.getDefaultRules().getMatches().get(rule);
+		replace = RefineCode.getDefaultRules().getReplaces().get(rule);
+	}
+
+	@Benchmark
+	public String replaceAll() {
+		return input.replaceAll(match, replace);
+	}
+}
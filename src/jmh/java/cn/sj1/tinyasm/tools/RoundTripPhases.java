@@ -0,0 +1,159 @@
+package cn.sj1.tinyasm.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The phases of {@link TinyAsmTestUtils#dumpTinyAsm(Class)}, each measured on
+ * its own: read the class, print the dump source, write it, compile it, load
+ * it and invoke its {@code dump()}. The in-memory compile of
+ * {@link TinyAsmMemoryCompiler} is measured next to javac on files.
+ *
+ * The setup runs none of the measured code: the dump source is printed by
+ * {@link #main(String[])} in a JVM of its own and the class bytes are read
+ * straight from the class path, so a cold run measures every phase cold. Only
+ * the states of load and build compile the dump beforehand.
+ *
+ * Compiling, loading and invoking the dump need tinyasm-core on the class path;
+ * without it only read, print and write run.
+ */
+public abstract class RoundTripPhases {
+
+	@State(Scope.Benchmark)
+	public static class Source {
+		@Param({ "cn.sj1.tinyasm.tools.SimpleSample", "cn.sj1.tinyasm.tools.LabelSample", "cn.sj1.tinyasm.tools.Pojo" })
+		public String className;
+
+		String dumpClassName;
+		byte[] code;
+		String source;
+		File directory;
+		File file;
+
+		@Setup
+		public void setup() throws Exception {
+			dumpClassName = className + "TinyAsmDump";
+			code = Files.readAllBytes(Paths.get(ClassLoader.getSystemResource(className.replace('.', '/') + ".class").toURI()));
+			directory = Files.createTempDirectory("tinyasm").toFile();
+			file = new File(directory, dumpClassName.replace('.', '/') + ".java");
+			generate(className, file);
+			source = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		}
+
+		@TearDown
+		public void tearDown() throws IOException {
+			try (Stream<Path> paths = Files.walk(directory.toPath())) {
+				paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Compiled {
+		Map<String, byte[]> classes;
+
+		@Setup
+		public void setup(Source source) {
+			classes = TinyAsmMemoryCompiler.compile(source.dumpClassName, source.source);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Loaded {
+		Class<?> dumpClass;
+
+		@Setup
+		public void setup(Source source, Compiled compiled) {
+			dumpClass = TinyAsmMemoryCompiler.loadClass(source.dumpClassName, compiled.classes);
+		}
+	}
+
+	/** Prints the dump source of className into file in a new JVM with the class path of this one. */
+	static void generate(String className, File file) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		if (System.getProperty("log4j.configuration") != null) {
+			command.add("-Dlog4j.configuration=" + System.getProperty("log4j.configuration"));
+		}
+		command.add(RoundTripPhases.class.getName());
+		command.add(className);
+		command.add(file.getPath());
+		Process process = new ProcessBuilder(command).inheritIO().start();
+		if (process.waitFor() != 0) {
+			throw new RuntimeException("Generate the dump of " + className + " failed");
+		}
+	}
+
+	/** Usage: RoundTripPhases &lt;class name&gt; &lt;source file&gt; */
+	public static void main(String[] args) throws IOException {
+		File file = new File(args[1]);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), print(TinyAsmTestUtils.readClassBytes(args[0])).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/** The uncached path of {@link TinyAsmTestUtils#tinyasmToString(byte[])}. */
+	static String print(byte[] code) {
+		return RefineCode.skipToString(TinyAsmTestUtils.printTinyAsm(code, new ArrayList<>(), new ArrayList<>()));
+	}
+
+	@Benchmark
+	public byte[] read(Source source) {
+		return TinyAsmTestUtils.readClassBytes(source.className);
+	}
+
+	@Benchmark
+	public String print(Source source) {
+		return print(source.code);
+	}
+
+	@Benchmark
+	public File write(Source source) {
+		TinyAsmTestUtils.writeToFile(source.source, source.file);
+		return source.file;
+	}
+
+	@Benchmark
+	public void javac(Source source) {
+		TinyAsmTestUtils.complie2Class(source.file, source.directory);
+	}
+
+	@Benchmark
+	public Map<String, byte[]> javacInMemory(Source source) {
+		return TinyAsmMemoryCompiler.compile(source.dumpClassName, source.source);
+	}
+
+	@Benchmark
+	public Class<?> load(Source source, Compiled compiled) {
+		return TinyAsmMemoryCompiler.loadClass(source.dumpClassName, compiled.classes);
+	}
+
+	@Benchmark
+	public byte[] build(Loaded loaded) {
+		return TinyAsmTestUtils.invokeDump(loaded.dumpClass);
+	}
+
+	/** All phases in a row, the whole round trip through memory. */
+	@Benchmark
+	public byte[] roundTrip(Source source) {
+		String code = print(TinyAsmTestUtils.readClassBytes(source.className));
+		return TinyAsmTestUtils.invokeDump(TinyAsmMemoryCompiler.compileAndLoad(source.dumpClassName, code));
+	}
+}
@@ -0,0 +1,54 @@
+package cn.sj1.tinyasm.tools;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@code ClassReader.accept} + {@link TinyASMifier} +
+ * {@code print}, from class bytes to the unrefined dump source, over the test
+ * samples and some large library classes. The large classes are taken from ASM
+ * rather than the JDK, whose class files may be newer than ASM can read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TinyASMifierBenchmark {
+
+	@Param({ "cn.sj1.tinyasm.tools.SimpleSample", "cn.sj1.tinyasm.tools.LabelSample", "cn.sj1.tinyasm.tools.Pojo", "org.objectweb.asm.ClassReader", "org.objectweb.asm.MethodWriter",
+			"org.objectweb.asm.SymbolTable" })
+	public String className;
+
+	byte[] code;
+
+	@Setup
+	public void setup() {
+		code = TinyAsmTestUtils.readClassBytes(className);
+	}
+
+	@Benchmark
+	public String print() {
+		return TinyAsmTestUtils.printTinyAsm(code, new ArrayList<>(), new ArrayList<>());
+	}
+
+	/** Reads the class into a ClassNode, then prints its methods on the common pool. */
+	@Benchmark
+	public String printParallel() {
+		return TinyAsmTestUtils.printTinyAsm(TinyAsmTestUtils.readClassNode(code), new ArrayList<>(), new ArrayList<>(), ForkJoinPool.commonPool());
+	}
+}
@@ -0,0 +1,27 @@
+package cn.sj1.tinyasm.tools;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching the first argument, all of them by default, with
+ * the GC profiler so allocation per operation is reported next to throughput.
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=TinyASMifierBenchmark
+ * </pre>
+ */
+public class TinyAsmBenchmarks {
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()//
+				.include(args.length > 0 ? args[0] : ".*Benchmark")//
+				.addProfiler(GCProfiler.class)//
+				.jvmArgsAppend("-Dlog4j.configuration=log4j-benchmark.properties")//
+				.build();
+		new Runner(options).run();
+	}
+}
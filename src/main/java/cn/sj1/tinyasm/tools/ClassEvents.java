@@ -0,0 +1,1152 @@
+package cn.sj1.tinyasm.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.RecordComponentVisitor;
+import org.objectweb.asm.TypePath;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * The visits of a class kept in one int array, the form {@link TinyAsmIRFile}
+ * writes a ClassNode in. An instruction is its opcode followed by its
+ * operands, every other visit a code above 255 followed by its arguments.
+ * Strings and other constants are kept once per class and referred to by
+ * index, labels are numbered per method. A visit with a body, like a field, a
+ * method or an annotation, also holds where its body ends, so a visitor that
+ * returns null skips it.
+ */
+final class ClassEvents {
+
+	static final int END = 256;
+	static final int SOURCE = 257;
+	static final int NEST_HOST = 258;
+	static final int OUTER_CLASS = 259;
+	static final int ANNOTATION = 260;
+	static final int TYPE_ANNOTATION = 261;
+	static final int ATTRIBUTE = 262;
+	static final int NEST_MEMBER = 263;
+	static final int INNER_CLASS = 264;
+	static final int RECORD_COMPONENT = 265;
+	static final int FIELD = 266;
+	static final int METHOD = 267;
+	static final int PARAMETER = 268;
+	static final int ANNOTATION_DEFAULT = 269;
+	static final int ANNOTABLE_PARAMETER_COUNT = 270;
+	static final int PARAMETER_ANNOTATION = 271;
+	static final int CODE = 272;
+	static final int FRAME = 273;
+	static final int LABEL = 274;
+	static final int INSN_ANNOTATION = 275;
+	static final int TRY_CATCH_BLOCK = 276;
+	static final int TRY_CATCH_ANNOTATION = 277;
+	static final int LOCAL_VARIABLE = 278;
+	static final int LOCAL_VARIABLE_ANNOTATION = 279;
+	static final int LINE_NUMBER = 280;
+	static final int MAXS = 281;
+	static final int VALUE = 282;
+	static final int ENUM = 283;
+	static final int NESTED_ANNOTATION = 284;
+	static final int ARRAY = 285;
+	static final int MODULE = 286;
+	static final int MAIN_CLASS = 287;
+	static final int PACKAGE = 288;
+	static final int REQUIRE = 289;
+	static final int EXPORT = 290;
+	static final int OPEN = 291;
+	static final int USE = 292;
+	static final int PROVIDE = 293;
+
+	// kinds of instructions, by opcode
+	static final byte INSN = 0;
+	static final byte INT_INSN = 1;
+	static final byte VAR_INSN = 2;
+	static final byte TYPE_INSN = 3;
+	static final byte FIELD_INSN = 4;
+	static final byte METHOD_INSN = 5;
+	static final byte INVOKE_DYNAMIC_INSN = 6;
+	static final byte JUMP_INSN = 7;
+	static final byte LDC_INSN = 8;
+	static final byte IINC_INSN = 9;
+	static final byte TABLESWITCH_INSN = 10;
+	static final byte LOOKUPSWITCH_INSN = 11;
+	static final byte MULTIANEWARRAY_INSN = 12;
+
+	static final byte[] KINDS = new byte[256];
+	static {
+		KINDS[Opcodes.BIPUSH] = KINDS[Opcodes.SIPUSH] = KINDS[Opcodes.NEWARRAY] = INT_INSN;
+		for (int op = Opcodes.ILOAD; op <= Opcodes.ALOAD; op++) KINDS[op] = VAR_INSN;
+		for (int op = Opcodes.ISTORE; op <= Opcodes.ASTORE; op++) KINDS[op] = VAR_INSN;
+		KINDS[Opcodes.RET] = VAR_INSN;
+		KINDS[Opcodes.NEW] = KINDS[Opcodes.ANEWARRAY] = KINDS[Opcodes.CHECKCAST] = KINDS[Opcodes.INSTANCEOF] = TYPE_INSN;
+		for (int op = Opcodes.GETSTATIC; op <= Opcodes.PUTFIELD; op++) KINDS[op] = FIELD_INSN;
+		for (int op = Opcodes.INVOKEVIRTUAL; op <= Opcodes.INVOKEINTERFACE; op++) KINDS[op] = METHOD_INSN;
+		KINDS[Opcodes.INVOKEDYNAMIC] = INVOKE_DYNAMIC_INSN;
+		for (int op = Opcodes.IFEQ; op <= Opcodes.JSR; op++) KINDS[op] = JUMP_INSN;
+		KINDS[Opcodes.IFNULL] = KINDS[Opcodes.IFNONNULL] = JUMP_INSN;
+		KINDS[Opcodes.LDC] = LDC_INSN;
+		KINDS[Opcodes.IINC] = IINC_INSN;
+		KINDS[Opcodes.TABLESWITCH] = TABLESWITCH_INSN;
+		KINDS[Opcodes.LOOKUPSWITCH] = LOOKUPSWITCH_INSN;
+		KINDS[Opcodes.MULTIANEWARRAY] = MULTIANEWARRAY_INSN;
+	}
+
+	// frame elements
+	static final int FRAME_NULL = 0;
+	static final int FRAME_TYPE = 1;
+	static final int FRAME_CLASS = 2;
+	static final int FRAME_LABEL = 3;
+
+	/** A field or a method. */
+	static class Member {
+		final int access;
+		final String name;
+		final String descriptor;
+		final String signature;
+		/** the initial value of a field */
+		final Object value;
+		/** the exceptions of a method */
+		final String[] exceptions;
+		/** where the body starts in {@link ClassEvents#events} */
+		final int start;
+		/** how many labels a method has */
+		int labels;
+
+		Member(int access, String name, String descriptor, String signature, Object value, String[] exceptions, int start) {
+			this.access = access;
+			this.name = name;
+			this.descriptor = descriptor;
+			this.signature = signature;
+			this.value = value;
+			this.exceptions = exceptions;
+			this.start = start;
+		}
+
+		@Override
+		public String toString() {
+			return name + descriptor;
+		}
+	}
+
+	final int version;
+	final int access;
+	final String name;
+	final String signature;
+	final String superName;
+	final String[] interfaces;
+	final int[] events;
+	final Object[] constants;
+	final List<Member> fields;
+	final List<Member> methods;
+
+	ClassEvents(int version, int access, String name, String signature, String superName, String[] interfaces, int[] events, Object[] constants, List<Member> fields,
+			List<Member> methods) {
+		this.version = version;
+		this.access = access;
+		this.name = name;
+		this.signature = signature;
+		this.superName = superName;
+		this.interfaces = interfaces;
+		this.events = events;
+		this.constants = constants;
+		this.fields = Collections.unmodifiableList(fields);
+		this.methods = Collections.unmodifiableList(methods);
+	}
+
+	/** Records the visits classNode makes. */
+	static ClassEvents record(ClassNode classNode) {
+		ClassRecorder recorder = new ClassRecorder();
+		classNode.accept(recorder);
+		return recorder.build();
+	}
+
+	// -----------------------------------------------------------------------------------------------
+	// Replay
+	// -----------------------------------------------------------------------------------------------
+
+	ClassNode toClassNode() {
+		ClassNode classNode = new ClassNode();
+		accept(classNode);
+		return classNode;
+	}
+
+	/** Makes cv visit the class as the recorder was made to visit it. */
+	void accept(ClassVisitor cv) {
+		cv.visit(version, access, name, signature, superName, interfaces);
+		int p = 0;
+		while (true) {
+			int event = events[p++];
+			switch (event) {
+			case END:
+				cv.visitEnd();
+				return;
+			case SOURCE:
+				cv.visitSource(string(p), string(p + 1));
+				p += 2;
+				break;
+			case MODULE: {
+				int end = events[p + 3];
+				ModuleVisitor mv = cv.visitModule(string(p), events[p + 1], string(p + 2));
+				p = mv == null ? end : acceptModule(p + 4, mv);
+				break;
+			}
+			case NEST_HOST:
+				cv.visitNestHost(string(p));
+				p += 1;
+				break;
+			case OUTER_CLASS:
+				cv.visitOuterClass(string(p), string(p + 1), string(p + 2));
+				p += 3;
+				break;
+			case ANNOTATION:
+				p = acceptAnnotation(p + 3, cv.visitAnnotation(string(p), events[p + 1] != 0), events[p + 2]);
+				break;
+			case TYPE_ANNOTATION:
+				p = acceptAnnotation(p + 5, cv.visitTypeAnnotation(events[p], (TypePath) constant(events[p + 1]), string(p + 2), events[p + 3] != 0), events[p + 4]);
+				break;
+			case ATTRIBUTE:
+				cv.visitAttribute((Attribute) constant(events[p]));
+				p += 1;
+				break;
+			case NEST_MEMBER:
+				cv.visitNestMember(string(p));
+				p += 1;
+				break;
+			case INNER_CLASS:
+				cv.visitInnerClass(string(p), string(p + 1), string(p + 2), events[p + 3]);
+				p += 4;
+				break;
+			case RECORD_COMPONENT: {
+				int end = events[p + 3];
+				RecordComponentVisitor rv = cv.visitRecordComponent(string(p), string(p + 1), string(p + 2));
+				p = rv == null ? end : acceptRecordComponent(p + 4, rv);
+				break;
+			}
+			case FIELD: {
+				Member field = fields.get(events[p]);
+				FieldVisitor fv = cv.visitField(field.access, field.name, field.descriptor, field.signature, field.value);
+				p = fv == null ? events[p + 1] : acceptField(field.start, fv);
+				break;
+			}
+			case METHOD: {
+				Member method = methods.get(events[p]);
+				MethodVisitor mv = cv.visitMethod(method.access, method.name, method.descriptor, method.signature, method.exceptions);
+				p = mv == null ? events[p + 1] : acceptMethod(method, mv);
+				break;
+			}
+			default:
+				throw new IllegalStateException("Unexpected event " + event + " at " + (p - 1));
+			}
+		}
+	}
+
+	private int acceptModule(int p, ModuleVisitor mv) {
+		while (true) {
+			int event = events[p++];
+			switch (event) {
+			case END:
+				mv.visitEnd();
+				return p;
+			case MAIN_CLASS:
+				mv.visitMainClass(string(p));
+				p += 1;
+				break;
+			case PACKAGE:
+				mv.visitPackage(string(p));
+				p += 1;
+				break;
+			case REQUIRE:
+				mv.visitRequire(string(p), events[p + 1], string(p + 2));
+				p += 3;
+				break;
+			case EXPORT:
+				mv.visitExport(string(p), events[p + 1], strings(p + 2));
+				p += 3 + Math.max(events[p + 2], 0);
+				break;
+			case OPEN:
+				mv.visitOpen(string(p), events[p + 1], strings(p + 2));
+				p += 3 + Math.max(events[p + 2], 0);
+				break;
+			case USE:
+				mv.visitUse(string(p));
+				p += 1;
+				break;
+			case PROVIDE:
+				mv.visitProvide(string(p), strings(p + 1));
+				p += 2 + Math.max(events[p + 1], 0);
+				break;
+			default:
+				throw new IllegalStateException("Unexpected event " + event + " at " + (p - 1));
+			}
+		}
+	}
+
+	/** Makes mv visit the body of method, returns where the next visit starts. */
+	private int acceptMethod(Member method, MethodVisitor mv) {
+		Label[] labels = new Label[method.labels];
+		int p = method.start;
+		while (true) {
+			int event = events[p++];
+			if (event < END) {
+				p = acceptInsn(event, p, mv, labels);
+				continue;
+			}
+			switch (event) {
+			case END:
+				mv.visitEnd();
+				return p;
+			case PARAMETER:
+				mv.visitParameter(string(p), events[p + 1]);
+				p += 2;
+				break;
+			case ANNOTATION_DEFAULT:
+				p = acceptAnnotation(p + 1, mv.visitAnnotationDefault(), events[p]);
+				break;
+			case ANNOTATION:
+				p = acceptAnnotation(p + 3, mv.visitAnnotation(string(p), events[p + 1] != 0), events[p + 2]);
+				break;
+			case TYPE_ANNOTATION:
+				p = acceptAnnotation(p + 5, mv.visitTypeAnnotation(events[p], (TypePath) constant(events[p + 1]), string(p + 2), events[p + 3] != 0), events[p + 4]);
+				break;
+			case ANNOTABLE_PARAMETER_COUNT:
+				mv.visitAnnotableParameterCount(events[p], events[p + 1] != 0);
+				p += 2;
+				break;
+			case PARAMETER_ANNOTATION:
+				p = acceptAnnotation(p + 4, mv.visitParameterAnnotation(events[p], string(p + 1), events[p + 2] != 0), events[p + 3]);
+				break;
+			case ATTRIBUTE:
+				mv.visitAttribute((Attribute) constant(events[p]));
+				p += 1;
+				break;
+			case CODE:
+				mv.visitCode();
+				break;
+			case FRAME: {
+				int type = events[p++];
+				int numLocal = events[p++];
+				Object[] local = frameArray(events[p++]);
+				p = frameElements(p, local, labels);
+				int numStack = events[p++];
+				Object[] stack = frameArray(events[p++]);
+				p = frameElements(p, stack, labels);
+				mv.visitFrame(type, numLocal, local, numStack, stack);
+				break;
+			}
+			case LABEL:
+				mv.visitLabel(label(labels, events[p]));
+				p += 1;
+				break;
+			case INSN_ANNOTATION:
+				p = acceptAnnotation(p + 5, mv.visitInsnAnnotation(events[p], (TypePath) constant(events[p + 1]), string(p + 2), events[p + 3] != 0), events[p + 4]);
+				break;
+			case TRY_CATCH_BLOCK:
+				mv.visitTryCatchBlock(label(labels, events[p]), label(labels, events[p + 1]), label(labels, events[p + 2]), string(p + 3));
+				p += 4;
+				break;
+			case TRY_CATCH_ANNOTATION:
+				p = acceptAnnotation(p + 5, mv.visitTryCatchAnnotation(events[p], (TypePath) constant(events[p + 1]), string(p + 2), events[p + 3] != 0), events[p + 4]);
+				break;
+			case LOCAL_VARIABLE:
+				mv.visitLocalVariable(string(p), string(p + 1), string(p + 2), label(labels, events[p + 3]), label(labels, events[p + 4]), events[p + 5]);
+				p += 6;
+				break;
+			case LOCAL_VARIABLE_ANNOTATION: {
+				int typeRef = events[p++];
+				TypePath typePath = (TypePath) constant(events[p++]);
+				int n = events[p++];
+				Label[] start = new Label[n];
+				Label[] end = new Label[n];
+				int[] index = new int[n];
+				for (int i = 0; i < n; i++) {
+					start[i] = label(labels, events[p++]);
+					end[i] = label(labels, events[p++]);
+					index[i] = events[p++];
+				}
+				String descriptor = string(p);
+				boolean visible = events[p + 1] != 0;
+				p = acceptAnnotation(p + 3, mv.visitLocalVariableAnnotation(typeRef, typePath, start, end, index, descriptor, visible), events[p + 2]);
+				break;
+			}
+			case LINE_NUMBER:
+				mv.visitLineNumber(events[p], label(labels, events[p + 1]));
+				p += 2;
+				break;
+			case MAXS:
+				mv.visitMaxs(events[p], events[p + 1]);
+				p += 2;
+				break;
+			default:
+				throw new IllegalStateException("Unexpected event " + event + " at " + (p - 1));
+			}
+		}
+	}
+
+	private int acceptInsn(int opcode, int p, MethodVisitor mv, Label[] labels) {
+		switch (KINDS[opcode]) {
+		case INSN:
+			mv.visitInsn(opcode);
+			return p;
+		case INT_INSN:
+			mv.visitIntInsn(opcode, events[p]);
+			return p + 1;
+		case VAR_INSN:
+			mv.visitVarInsn(opcode, events[p]);
+			return p + 1;
+		case TYPE_INSN:
+			mv.visitTypeInsn(opcode, string(p));
+			return p + 1;
+		case FIELD_INSN:
+			mv.visitFieldInsn(opcode, string(p), string(p + 1), string(p + 2));
+			return p + 3;
+		case METHOD_INSN:
+			mv.visitMethodInsn(opcode, string(p), string(p + 1), string(p + 2), events[p + 3] != 0);
+			return p + 4;
+		case INVOKE_DYNAMIC_INSN: {
+			String name = string(p);
+			String descriptor = string(p + 1);
+			Handle bootstrapMethodHandle = (Handle) constant(events[p + 2]);
+			Object[] bootstrapMethodArguments = new Object[events[p + 3]];
+			p += 4;
+			for (int i = 0; i < bootstrapMethodArguments.length; i++) {
+				bootstrapMethodArguments[i] = constant(events[p++]);
+			}
+			mv.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+			return p;
+		}
+		case JUMP_INSN:
+			mv.visitJumpInsn(opcode, label(labels, events[p]));
+			return p + 1;
+		case LDC_INSN:
+			mv.visitLdcInsn(constant(events[p]));
+			return p + 1;
+		case IINC_INSN:
+			mv.visitIincInsn(events[p], events[p + 1]);
+			return p + 2;
+		case TABLESWITCH_INSN: {
+			int min = events[p];
+			int max = events[p + 1];
+			Label dflt = label(labels, events[p + 2]);
+			Label[] targets = new Label[events[p + 3]];
+			p += 4;
+			for (int i = 0; i < targets.length; i++) {
+				targets[i] = label(labels, events[p++]);
+			}
+			mv.visitTableSwitchInsn(min, max, dflt, targets);
+			return p;
+		}
+		case LOOKUPSWITCH_INSN: {
+			Label dflt = label(labels, events[p]);
+			int n = events[p + 1];
+			int[] keys = new int[n];
+			Label[] targets = new Label[n];
+			p += 2;
+			for (int i = 0; i < n; i++) {
+				keys[i] = events[p++];
+				targets[i] = label(labels, events[p++]);
+			}
+			mv.visitLookupSwitchInsn(dflt, keys, targets);
+			return p;
+		}
+		case MULTIANEWARRAY_INSN:
+			mv.visitMultiANewArrayInsn(string(p), events[p + 1]);
+			return p + 2;
+		default:
+			throw new IllegalStateException("Unexpected opcode " + opcode);
+		}
+	}
+
+	private int acceptField(int p, FieldVisitor fv) {
+		while (true) {
+			int event = events[p++];
+			switch (event) {
+			case END:
+				fv.visitEnd();
+				return p;
+			case ANNOTATION:
+				p = acceptAnnotation(p + 3, fv.visitAnnotation(string(p), events[p + 1] != 0), events[p + 2]);
+				break;
+			case TYPE_ANNOTATION:
+				p = acceptAnnotation(p + 5, fv.visitTypeAnnotation(events[p], (TypePath) constant(events[p + 1]), string(p + 2), events[p + 3] != 0), events[p + 4]);
+				break;
+			case ATTRIBUTE:
+				fv.visitAttribute((Attribute) constant(events[p]));
+				p += 1;
+				break;
+			default:
+				throw new IllegalStateException("Unexpected event " + event + " at " + (p - 1));
+			}
+		}
+	}
+
+	private int acceptRecordComponent(int p, RecordComponentVisitor rv) {
+		while (true) {
+			int event = events[p++];
+			switch (event) {
+			case END:
+				rv.visitEnd();
+				return p;
+			case ANNOTATION:
+				p = acceptAnnotation(p + 3, rv.visitAnnotation(string(p), events[p + 1] != 0), events[p + 2]);
+				break;
+			case TYPE_ANNOTATION:
+				p = acceptAnnotation(p + 5, rv.visitTypeAnnotation(events[p], (TypePath) constant(events[p + 1]), string(p + 2), events[p + 3] != 0), events[p + 4]);
+				break;
+			case ATTRIBUTE:
+				rv.visitAttribute((Attribute) constant(events[p]));
+				p += 1;
+				break;
+			default:
+				throw new IllegalStateException("Unexpected event " + event + " at " + (p - 1));
+			}
+		}
+	}
+
+	/** Replays the annotation body at p into av, skips to end when av is null. */
+	private int acceptAnnotation(int p, AnnotationVisitor av, int end) {
+		if (av == null) return end;
+		while (true) {
+			int event = events[p++];
+			switch (event) {
+			case END:
+				av.visitEnd();
+				return p;
+			case VALUE:
+				av.visit(string(p), constant(events[p + 1]));
+				p += 2;
+				break;
+			case ENUM:
+				av.visitEnum(string(p), string(p + 1), string(p + 2));
+				p += 3;
+				break;
+			case NESTED_ANNOTATION:
+				p = acceptAnnotation(p + 3, av.visitAnnotation(string(p), string(p + 1)), events[p + 2]);
+				break;
+			case ARRAY:
+				p = acceptAnnotation(p + 2, av.visitArray(string(p)), events[p + 1]);
+				break;
+			default:
+				throw new IllegalStateException("Unexpected event " + event + " at " + (p - 1));
+			}
+		}
+	}
+
+	private static Object[] frameArray(int length) {
+		return length < 0 ? null : new Object[length];
+	}
+
+	private int frameElements(int p, Object[] elements, Label[] labels) {
+		if (elements == null) return p;
+		for (int i = 0; i < elements.length; i++) {
+			int kind = events[p++];
+			int value = events[p++];
+			switch (kind) {
+			case FRAME_NULL:
+				break;
+			case FRAME_TYPE:
+				elements[i] = value;
+				break;
+			case FRAME_CLASS:
+				elements[i] = constant(value);
+				break;
+			case FRAME_LABEL:
+				elements[i] = label(labels, value);
+				break;
+			default:
+				throw new IllegalStateException("Unexpected frame element " + kind);
+			}
+		}
+		return p;
+	}
+
+	private static Label label(Label[] labels, int id) {
+		Label label = labels[id];
+		if (label == null) label = labels[id] = new Label();
+		return label;
+	}
+
+	private Object constant(int index) {
+		return index == 0 ? null : constants[index - 1];
+	}
+
+	private String string(int p) {
+		return (String) constant(events[p]);
+	}
+
+	/** The strings counted at p, {@literal null} for a count of -1. */
+	private String[] strings(int p) {
+		int n = events[p];
+		if (n < 0) return null;
+		String[] strings = new String[n];
+		for (int i = 0; i < n; i++) {
+			strings[i] = string(p + 1 + i);
+		}
+		return strings;
+	}
+
+	// -----------------------------------------------------------------------------------------------
+	// Recording
+	// -----------------------------------------------------------------------------------------------
+
+	static class Recording {
+		int[] events = new int[1024];
+		int size;
+		final List<Object> constants = new ArrayList<>();
+		final Map<Object, Integer> constantIndex = new HashMap<>();
+
+		void add(int value) {
+			if (size == events.length) events = Arrays.copyOf(events, size * 2);
+			events[size++] = value;
+		}
+
+		void add(int a, int b) {
+			add(a);
+			add(b);
+		}
+
+		void add(int a, int b, int c) {
+			add(a);
+			add(b);
+			add(c);
+		}
+
+		/** Index of value among the constants + 1, 0 for null. */
+		int constant(Object value) {
+			if (value == null) return 0;
+			Integer index = constantIndex.get(value);
+			if (index == null) {
+				constants.add(value);
+				index = constants.size();
+				if (!value.getClass().isArray()) constantIndex.put(value, index);
+			}
+			return index;
+		}
+
+		/** Adds the count of values, -1 for null, and the values as constants. */
+		void addStrings(String[] values) {
+			if (values == null) {
+				add(-1);
+				return;
+			}
+			add(values.length);
+			for (String value : values) {
+				add(constant(value));
+			}
+		}
+
+		/** Reserves the place of the end of a body, see {@link #end(int)}. */
+		int reserve() {
+			add(0);
+			return size - 1;
+		}
+
+		/** Ends a body and makes the place reserved for it point after it. */
+		void end(int reserved) {
+			add(END);
+			events[reserved] = size;
+		}
+	}
+
+	static class ClassRecorder extends ClassVisitor {
+		final Recording r = new Recording();
+		final List<Member> fields = new ArrayList<>();
+		final List<Member> methods = new ArrayList<>();
+		int version;
+		int access;
+		String name;
+		String signature;
+		String superName;
+		String[] interfaces;
+		/** where the end of the module body goes while it is open */
+		int moduleEnd = -1;
+
+		ClassRecorder() {
+			super(Opcodes.ASM8);
+		}
+
+		ClassEvents build() {
+			return new ClassEvents(version, access, name, signature, superName, interfaces, Arrays.copyOf(r.events, r.size), r.constants.toArray(), fields, methods);
+		}
+
+		@Override
+		public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+			this.version = version;
+			this.access = access;
+			this.name = name;
+			this.signature = signature;
+			this.superName = superName;
+			this.interfaces = interfaces;
+		}
+
+		@Override
+		public void visitSource(String source, String debug) {
+			r.add(SOURCE, r.constant(source), r.constant(debug));
+		}
+
+		@Override
+		public ModuleVisitor visitModule(String name, int access, String version) {
+			r.add(MODULE, r.constant(name), access);
+			r.add(r.constant(version));
+			moduleEnd = r.reserve();
+			return new ModuleVisitor(Opcodes.ASM8) {
+				@Override
+				public void visitMainClass(String mainClass) {
+					r.add(MAIN_CLASS, r.constant(mainClass));
+				}
+
+				@Override
+				public void visitPackage(String packaze) {
+					r.add(PACKAGE, r.constant(packaze));
+				}
+
+				@Override
+				public void visitRequire(String module, int access, String version) {
+					r.add(REQUIRE, r.constant(module), access);
+					r.add(r.constant(version));
+				}
+
+				@Override
+				public void visitExport(String packaze, int access, String... modules) {
+					r.add(EXPORT, r.constant(packaze), access);
+					r.addStrings(modules);
+				}
+
+				@Override
+				public void visitOpen(String packaze, int access, String... modules) {
+					r.add(OPEN, r.constant(packaze), access);
+					r.addStrings(modules);
+				}
+
+				@Override
+				public void visitUse(String service) {
+					r.add(USE, r.constant(service));
+				}
+
+				@Override
+				public void visitProvide(String service, String... providers) {
+					r.add(PROVIDE, r.constant(service));
+					r.addStrings(providers);
+				}
+
+				@Override
+				public void visitEnd() {
+					endModule();
+				}
+			};
+		}
+
+		/** Ends the module body, ModuleNode.accept of ASM 8 does not call its visitEnd. */
+		void endModule() {
+			if (moduleEnd >= 0) {
+				r.end(moduleEnd);
+				moduleEnd = -1;
+			}
+		}
+
+		@Override
+		public void visitNestHost(String nestHost) {
+			endModule();
+			r.add(NEST_HOST, r.constant(nestHost));
+		}
+
+		@Override
+		public void visitOuterClass(String owner, String name, String descriptor) {
+			endModule();
+			r.add(OUTER_CLASS, r.constant(owner));
+			r.add(r.constant(name), r.constant(descriptor));
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			endModule();
+			return annotation(r, descriptor, visible);
+		}
+
+		@Override
+		public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+			endModule();
+			return typeAnnotation(r, TYPE_ANNOTATION, typeRef, typePath, descriptor, visible);
+		}
+
+		@Override
+		public void visitAttribute(Attribute attribute) {
+			endModule();
+			r.add(ATTRIBUTE, r.constant(attribute));
+		}
+
+		@Override
+		public void visitNestMember(String nestMember) {
+			endModule();
+			r.add(NEST_MEMBER, r.constant(nestMember));
+		}
+
+		@Override
+		public void visitInnerClass(String name, String outerName, String innerName, int access) {
+			endModule();
+			r.add(INNER_CLASS, r.constant(name), r.constant(outerName));
+			r.add(r.constant(innerName), access);
+		}
+
+		@Override
+		public RecordComponentVisitor visitRecordComponent(String name, String descriptor, String signature) {
+			endModule();
+			r.add(RECORD_COMPONENT, r.constant(name));
+			r.add(r.constant(descriptor), r.constant(signature));
+			int end = r.reserve();
+			return new RecordComponentVisitor(Opcodes.ASM8) {
+				@Override
+				public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+					return annotation(r, descriptor, visible);
+				}
+
+				@Override
+				public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+					return typeAnnotation(r, TYPE_ANNOTATION, typeRef, typePath, descriptor, visible);
+				}
+
+				@Override
+				public void visitAttribute(Attribute attribute) {
+					r.add(ATTRIBUTE, r.constant(attribute));
+				}
+
+				@Override
+				public void visitEnd() {
+					r.end(end);
+				}
+			};
+		}
+
+		@Override
+		public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+			endModule();
+			r.add(FIELD, fields.size());
+			int end = r.reserve();
+			fields.add(new Member(access, name, descriptor, signature, value, null, r.size));
+			return new FieldVisitor(Opcodes.ASM8) {
+				@Override
+				public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+					return annotation(r, descriptor, visible);
+				}
+
+				@Override
+				public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+					return typeAnnotation(r, TYPE_ANNOTATION, typeRef, typePath, descriptor, visible);
+				}
+
+				@Override
+				public void visitAttribute(Attribute attribute) {
+					r.add(ATTRIBUTE, r.constant(attribute));
+				}
+
+				@Override
+				public void visitEnd() {
+					r.end(end);
+				}
+			};
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+			endModule();
+			r.add(METHOD, methods.size());
+			int end = r.reserve();
+			Member method = new Member(access, name, descriptor, signature, null, exceptions, r.size);
+			methods.add(method);
+			return new MethodRecorder(r, method, end);
+		}
+
+		@Override
+		public void visitEnd() {
+			endModule();
+			r.add(END);
+		}
+	}
+
+	static class MethodRecorder extends MethodVisitor {
+		final Recording r;
+		final Member method;
+		final int end;
+		final Map<Label, Integer> labels = new IdentityHashMap<>();
+
+		MethodRecorder(Recording r, Member method, int end) {
+			super(Opcodes.ASM8);
+			this.r = r;
+			this.method = method;
+			this.end = end;
+		}
+
+		int label(Label label) {
+			Integer id = labels.get(label);
+			if (id == null) {
+				id = labels.size();
+				labels.put(label, id);
+			}
+			return id;
+		}
+
+		@Override
+		public void visitParameter(String name, int access) {
+			r.add(PARAMETER, r.constant(name), access);
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotationDefault() {
+			r.add(ANNOTATION_DEFAULT);
+			return new AnnotationRecorder(r, r.reserve());
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			return annotation(r, descriptor, visible);
+		}
+
+		@Override
+		public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+			return typeAnnotation(r, TYPE_ANNOTATION, typeRef, typePath, descriptor, visible);
+		}
+
+		@Override
+		public void visitAnnotableParameterCount(int parameterCount, boolean visible) {
+			r.add(ANNOTABLE_PARAMETER_COUNT, parameterCount, visible ? 1 : 0);
+		}
+
+		@Override
+		public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+			r.add(PARAMETER_ANNOTATION, parameter, r.constant(descriptor));
+			r.add(visible ? 1 : 0);
+			return new AnnotationRecorder(r, r.reserve());
+		}
+
+		@Override
+		public void visitAttribute(Attribute attribute) {
+			r.add(ATTRIBUTE, r.constant(attribute));
+		}
+
+		@Override
+		public void visitCode() {
+			r.add(CODE);
+		}
+
+		@Override
+		public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+			r.add(FRAME, type, numLocal);
+			frameElements(numLocal, local);
+			r.add(numStack);
+			frameElements(numStack, stack);
+		}
+
+		private void frameElements(int n, Object[] elements) {
+			if (elements == null) {
+				r.add(-1);
+				return;
+			}
+			int length = Math.min(n, elements.length);
+			r.add(length);
+			for (int i = 0; i < length; i++) {
+				Object element = elements[i];
+				if (element == null) r.add(FRAME_NULL, 0);
+				else if (element instanceof Integer) r.add(FRAME_TYPE, (Integer) element);
+				else if (element instanceof String) r.add(FRAME_CLASS, r.constant(element));
+				else r.add(FRAME_LABEL, label((Label) element));
+			}
+		}
+
+		@Override
+		public void visitInsn(int opcode) {
+			r.add(opcode);
+		}
+
+		@Override
+		public void visitIntInsn(int opcode, int operand) {
+			r.add(opcode, operand);
+		}
+
+		@Override
+		public void visitVarInsn(int opcode, int var) {
+			r.add(opcode, var);
+		}
+
+		@Override
+		public void visitTypeInsn(int opcode, String type) {
+			r.add(opcode, r.constant(type));
+		}
+
+		@Override
+		public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+			r.add(opcode, r.constant(owner));
+			r.add(r.constant(name), r.constant(descriptor));
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+			r.add(opcode, r.constant(owner));
+			r.add(r.constant(name), r.constant(descriptor));
+			r.add(isInterface ? 1 : 0);
+		}
+
+		@Override
+		public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+			r.add(Opcodes.INVOKEDYNAMIC, r.constant(name), r.constant(descriptor));
+			r.add(r.constant(bootstrapMethodHandle), bootstrapMethodArguments.length);
+			for (Object argument : bootstrapMethodArguments) {
+				r.add(r.constant(argument));
+			}
+		}
+
+		@Override
+		public void visitJumpInsn(int opcode, Label label) {
+			r.add(opcode, label(label));
+		}
+
+		@Override
+		public void visitLabel(Label label) {
+			r.add(LABEL, label(label));
+		}
+
+		@Override
+		public void visitLdcInsn(Object value) {
+			r.add(Opcodes.LDC, r.constant(value));
+		}
+
+		@Override
+		public void visitIincInsn(int var, int increment) {
+			r.add(Opcodes.IINC, var, increment);
+		}
+
+		@Override
+		public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+			r.add(Opcodes.TABLESWITCH, min, max);
+			r.add(label(dflt), labels.length);
+			for (Label label : labels) {
+				r.add(label(label));
+			}
+		}
+
+		@Override
+		public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+			r.add(Opcodes.LOOKUPSWITCH, label(dflt), keys.length);
+			for (int i = 0; i < keys.length; i++) {
+				r.add(keys[i], label(labels[i]));
+			}
+		}
+
+		@Override
+		public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+			r.add(Opcodes.MULTIANEWARRAY, r.constant(descriptor), numDimensions);
+		}
+
+		@Override
+		public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+			return typeAnnotation(r, INSN_ANNOTATION, typeRef, typePath, descriptor, visible);
+		}
+
+		@Override
+		public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+			r.add(TRY_CATCH_BLOCK, label(start), label(end));
+			r.add(label(handler), r.constant(type));
+		}
+
+		@Override
+		public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+			return typeAnnotation(r, TRY_CATCH_ANNOTATION, typeRef, typePath, descriptor, visible);
+		}
+
+		@Override
+		public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+			r.add(LOCAL_VARIABLE, r.constant(name), r.constant(descriptor));
+			r.add(r.constant(signature), label(start), label(end));
+			r.add(index);
+		}
+
+		@Override
+		public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start, Label[] end, int[] index, String descriptor, boolean visible) {
+			r.add(LOCAL_VARIABLE_ANNOTATION, typeRef, r.constant(typePath));
+			r.add(start.length);
+			for (int i = 0; i < start.length; i++) {
+				r.add(label(start[i]), label(end[i]), index[i]);
+			}
+			r.add(r.constant(descriptor), visible ? 1 : 0);
+			return new AnnotationRecorder(r, r.reserve());
+		}
+
+		@Override
+		public void visitLineNumber(int line, Label start) {
+			r.add(LINE_NUMBER, line, label(start));
+		}
+
+		@Override
+		public void visitMaxs(int maxStack, int maxLocals) {
+			r.add(MAXS, maxStack, maxLocals);
+		}
+
+		@Override
+		public void visitEnd() {
+			r.end(end);
+			method.labels = labels.size();
+		}
+	}
+
+	static class AnnotationRecorder extends AnnotationVisitor {
+		final Recording r;
+		final int end;
+
+		AnnotationRecorder(Recording r, int end) {
+			super(Opcodes.ASM8);
+			this.r = r;
+			this.end = end;
+		}
+
+		@Override
+		public void visit(String name, Object value) {
+			r.add(VALUE, r.constant(name), r.constant(value));
+		}
+
+		@Override
+		public void visitEnum(String name, String descriptor, String value) {
+			r.add(ENUM, r.constant(name), r.constant(descriptor));
+			r.add(r.constant(value));
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+			r.add(NESTED_ANNOTATION, r.constant(name), r.constant(descriptor));
+			return new AnnotationRecorder(r, r.reserve());
+		}
+
+		@Override
+		public AnnotationVisitor visitArray(String name) {
+			r.add(ARRAY, r.constant(name));
+			return new AnnotationRecorder(r, r.reserve());
+		}
+
+		@Override
+		public void visitEnd() {
+			r.end(end);
+		}
+	}
+
+	static AnnotationVisitor annotation(Recording r, String descriptor, boolean visible) {
+		r.add(ANNOTATION, r.constant(descriptor), visible ? 1 : 0);
+		return new AnnotationRecorder(r, r.reserve());
+	}
+
+	static AnnotationVisitor typeAnnotation(Recording r, int event, int typeRef, TypePath typePath, String descriptor, boolean visible) {
+		r.add(event, typeRef, r.constant(typePath));
+		r.add(r.constant(descriptor), visible ? 1 : 0);
+		return new AnnotationRecorder(r, r.reserve());
+	}
+}
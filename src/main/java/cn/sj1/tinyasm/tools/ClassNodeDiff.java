@@ -0,0 +1,686 @@
+package cn.sj1.tinyasm.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InnerClassNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LocalVariableAnnotationNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.MultiANewArrayInsnNode;
+import org.objectweb.asm.tree.ParameterNode;
+import org.objectweb.asm.tree.RecordComponentNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.TypeAnnotationNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.util.Printer;
+
+/**
+ * Compares two classes member by member and instruction by instruction: the
+ * class header, nest, permitted subclasses, inner classes, record components,
+ * fields, methods with their parameters, try catch blocks and instructions, and
+ * every annotation and type annotation on them. Both are read without debug
+ * information and frames, which also drops the parameter names, constants are
+ * compared by value so the order of the constant pool does not matter, and jump
+ * targets are compared by the index of the instruction they lead to.
+ * Non-standard attributes are compared by type only, as ASM does not expose
+ * their content. The module of a module-info is not compared.
+ *
+ * Method bodies are compared instruction by instruction in canonical form,
+ * without building text. Only bodies that differ are turned into text to find
+ * the first instruction that diverges.
+ */
+public class ClassNodeDiff {
+
+	/** @return the differences, empty when both classes are the same. */
+	public static List<String> diff(byte[] expected, byte[] actual) {
+		return compare(expected, actual).getDifferences();
+	}
+
+	public static List<String> diff(ClassNode expected, ClassNode actual) {
+		return compare(expected, actual).getDifferences();
+	}
+
+	public static Result compare(byte[] expected, byte[] actual) {
+		return compare(read(expected), read(actual));
+	}
+
+	public static Result compare(ClassNode expected, ClassNode actual) {
+		Result result = new Result();
+		List<String> diffs = result.differences;
+		String at = expected.name;
+		check(diffs, at, "version", expected.version, actual.version);
+		check(diffs, at, "access", expected.access, actual.access);
+		check(diffs, at, "name", expected.name, actual.name);
+		check(diffs, at, "signature", expected.signature, actual.signature);
+		check(diffs, at, "superName", expected.superName, actual.superName);
+		check(diffs, at, "interfaces", expected.interfaces, actual.interfaces);
+		check(diffs, at, "outerClass", expected.outerClass, actual.outerClass);
+		check(diffs, at, "outerMethod", expected.outerMethod, actual.outerMethod);
+		check(diffs, at, "outerMethodDesc", expected.outerMethodDesc, actual.outerMethodDesc);
+		check(diffs, at, "innerClasses", innerClasses(expected.innerClasses), innerClasses(actual.innerClasses));
+		check(diffs, at, "nestHostClass", expected.nestHostClass, actual.nestHostClass);
+		check(diffs, at, "nestMembers", expected.nestMembers, actual.nestMembers);
+		check(diffs, at, "permittedSubclasses", expected.permittedSubtypesExperimental, actual.permittedSubtypesExperimental);
+		check(diffs, at, "annotations", annotations(expected.visibleAnnotations, expected.invisibleAnnotations), annotations(actual.visibleAnnotations, actual.invisibleAnnotations));
+		check(diffs, at, "typeAnnotations", typeAnnotations(expected.visibleTypeAnnotations, expected.invisibleTypeAnnotations),
+				typeAnnotations(actual.visibleTypeAnnotations, actual.invisibleTypeAnnotations));
+		check(diffs, at, "attributes", attributes(expected.attrs), attributes(actual.attrs));
+		check(diffs, at, "recordComponents", recordComponents(expected.recordComponents), recordComponents(actual.recordComponents));
+
+		Map<String, FieldNode> actualFields = new LinkedHashMap<>();
+		for (FieldNode field : actual.fields) {
+			actualFields.put(field.name, field);
+		}
+		for (FieldNode field : expected.fields) {
+			FieldNode other = actualFields.remove(field.name);
+			String fieldAt = at + "." + field.name;
+			if (other == null) {
+				diffs.add(fieldAt + ": missing field");
+				continue;
+			}
+			check(diffs, fieldAt, "access", field.access, other.access);
+			check(diffs, fieldAt, "desc", field.desc, other.desc);
+			check(diffs, fieldAt, "signature", field.signature, other.signature);
+			check(diffs, fieldAt, "value", constant(field.value), constant(other.value));
+			check(diffs, fieldAt, "annotations", annotations(field.visibleAnnotations, field.invisibleAnnotations), annotations(other.visibleAnnotations, other.invisibleAnnotations));
+			check(diffs, fieldAt, "typeAnnotations", typeAnnotations(field.visibleTypeAnnotations, field.invisibleTypeAnnotations),
+					typeAnnotations(other.visibleTypeAnnotations, other.invisibleTypeAnnotations));
+			check(diffs, fieldAt, "attributes", attributes(field.attrs), attributes(other.attrs));
+		}
+		for (String name : actualFields.keySet()) {
+			diffs.add(at + "." + name + ": unexpected field");
+		}
+
+		Map<String, MethodNode> actualMethods = new LinkedHashMap<>();
+		for (MethodNode method : actual.methods) {
+			actualMethods.put(method.name + method.desc, method);
+		}
+		for (MethodNode method : expected.methods) {
+			MethodNode other = actualMethods.remove(method.name + method.desc);
+			String methodAt = at + "." + method.name + method.desc;
+			if (other == null) {
+				diffs.add(methodAt + ": missing method");
+				continue;
+			}
+			check(diffs, methodAt, "access", method.access, other.access);
+			check(diffs, methodAt, "signature", method.signature, other.signature);
+			check(diffs, methodAt, "exceptions", method.exceptions, other.exceptions);
+			check(diffs, methodAt, "parameters", parameters(method.parameters), parameters(other.parameters));
+			check(diffs, methodAt, "annotations", annotations(method.visibleAnnotations, method.invisibleAnnotations), annotations(other.visibleAnnotations, other.invisibleAnnotations));
+			check(diffs, methodAt, "parameterAnnotations", parameterAnnotations(method), parameterAnnotations(other));
+			check(diffs, methodAt, "typeAnnotations", typeAnnotations(method.visibleTypeAnnotations, method.invisibleTypeAnnotations),
+					typeAnnotations(other.visibleTypeAnnotations, other.invisibleTypeAnnotations));
+			check(diffs, methodAt, "attributes", attributes(method.attrs), attributes(other.attrs));
+			check(diffs, methodAt, "annotationDefault", constant(method.annotationDefault), constant(other.annotationDefault));
+			check(diffs, methodAt, "tryCatchBlocks", tryCatchBlocks(method), tryCatchBlocks(other));
+			check(diffs, methodAt, "instructionTypeAnnotations", instructionTypeAnnotations(method), instructionTypeAnnotations(other));
+
+			if (!sameInstructions(method.instructions, other.instructions)) {
+				List<String> instructions = instructions(method.instructions);
+				List<String> otherInstructions = instructions(other.instructions);
+				int size = Math.min(instructions.size(), otherInstructions.size());
+				int index = 0;
+				while (index < size && instructions.get(index).equals(otherInstructions.get(index))) {
+					index++;
+				}
+				if (index < instructions.size() || index < otherInstructions.size()) {
+					Divergence divergence = new Divergence(methodAt, index, index < instructions.size() ? instructions.get(index) : null,
+							index < otherInstructions.size() ? otherInstructions.get(index) : null);
+					if (result.firstDivergence == null) {
+						result.firstDivergence = divergence;
+					}
+					diffs.add(divergence.toString());
+				}
+			}
+		}
+		for (String name : actualMethods.keySet()) {
+			diffs.add(at + "." + name + ": unexpected method");
+		}
+		return result;
+	}
+
+	/**
+	 * Hash of the canonical form of the body of method: the instructions as
+	 * {@link #instructions(InsnList)} gives them, without allocating their text.
+	 * Equal bodies have equal hashes, different bodies may have equal hashes too.
+	 * Meant to be kept per method, so bodies of a corpus can be told apart later
+	 * without reading the classes again; {@link #compare(ClassNode, ClassNode)}
+	 * does not use it.
+	 */
+	public static long hash(MethodNode method) {
+		Map<LabelNode, Integer> labels = labels(method.instructions);
+		long hash = 0xcbf29ce484222325L;
+		for (AbstractInsnNode insn : method.instructions) {
+			if (insn.getOpcode() < 0) continue;
+			Object constant = pushedConstant(insn);
+			if (constant != null) {
+				hash = mix(hash, -1);
+				hash = mix(hash, constant.getClass().getName().hashCode());
+				hash = mix(hash, constant.hashCode());
+				continue;
+			}
+			hash = mix(hash, insn.getOpcode());
+			switch (insn.getType()) {
+			case AbstractInsnNode.INT_INSN:
+				hash = mix(hash, ((IntInsnNode) insn).operand);
+				break;
+			case AbstractInsnNode.VAR_INSN:
+				hash = mix(hash, ((VarInsnNode) insn).var);
+				break;
+			case AbstractInsnNode.TYPE_INSN:
+				hash = mix(hash, ((TypeInsnNode) insn).desc.hashCode());
+				break;
+			case AbstractInsnNode.FIELD_INSN: {
+				FieldInsnNode field = (FieldInsnNode) insn;
+				hash = mix(mix(mix(hash, field.owner.hashCode()), field.name.hashCode()), field.desc.hashCode());
+				break;
+			}
+			case AbstractInsnNode.METHOD_INSN: {
+				MethodInsnNode invoke = (MethodInsnNode) insn;
+				hash = mix(mix(mix(mix(hash, invoke.owner.hashCode()), invoke.name.hashCode()), invoke.desc.hashCode()), invoke.itf ? 1 : 0);
+				break;
+			}
+			case AbstractInsnNode.INVOKE_DYNAMIC_INSN: {
+				InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+				hash = mix(mix(mix(hash, indy.name.hashCode()), indy.desc.hashCode()), constant(indy.bsm).hashCode());
+				hash = mix(hash, constant(indy.bsmArgs).hashCode());
+				break;
+			}
+			case AbstractInsnNode.JUMP_INSN:
+				hash = mix(hash, labels.get(((JumpInsnNode) insn).label));
+				break;
+			case AbstractInsnNode.LDC_INSN: {
+				Object cst = ((LdcInsnNode) insn).cst;
+				hash = mix(mix(hash, cst.getClass().getName().hashCode()), cst.hashCode());
+				break;
+			}
+			case AbstractInsnNode.IINC_INSN:
+				hash = mix(mix(hash, ((IincInsnNode) insn).var), ((IincInsnNode) insn).incr);
+				break;
+			case AbstractInsnNode.TABLESWITCH_INSN: {
+				TableSwitchInsnNode table = (TableSwitchInsnNode) insn;
+				hash = mix(mix(mix(hash, table.min), table.max), labels.get(table.dflt));
+				for (LabelNode label : table.labels) {
+					hash = mix(hash, labels.get(label));
+				}
+				break;
+			}
+			case AbstractInsnNode.LOOKUPSWITCH_INSN: {
+				LookupSwitchInsnNode lookup = (LookupSwitchInsnNode) insn;
+				hash = mix(hash, labels.get(lookup.dflt));
+				for (int i = 0; i < lookup.keys.size(); i++) {
+					hash = mix(mix(hash, lookup.keys.get(i)), labels.get(lookup.labels.get(i)));
+				}
+				break;
+			}
+			case AbstractInsnNode.MULTIANEWARRAY_INSN:
+				hash = mix(mix(hash, ((MultiANewArrayInsnNode) insn).desc.hashCode()), ((MultiANewArrayInsnNode) insn).dims);
+				break;
+			default:
+				break;
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Whether both lists have the same instructions as
+	 * {@link #instructions(InsnList)} gives them, without allocating their text.
+	 */
+	static boolean sameInstructions(InsnList expected, InsnList actual) {
+		Map<LabelNode, Integer> expectedLabels = labels(expected);
+		Map<LabelNode, Integer> actualLabels = labels(actual);
+		AbstractInsnNode insn = next(expected.getFirst());
+		AbstractInsnNode other = next(actual.getFirst());
+		while (insn != null && other != null) {
+			if (!sameInstruction(insn, other, expectedLabels, actualLabels)) return false;
+			insn = next(insn.getNext());
+			other = next(other.getNext());
+		}
+		return insn == null && other == null;
+	}
+
+	/** insn or the first instruction after it, labels, line numbers and frames skipped. */
+	private static AbstractInsnNode next(AbstractInsnNode insn) {
+		while (insn != null && insn.getOpcode() < 0) {
+			insn = insn.getNext();
+		}
+		return insn;
+	}
+
+	private static boolean sameInstruction(AbstractInsnNode insn, AbstractInsnNode other, Map<LabelNode, Integer> labels, Map<LabelNode, Integer> otherLabels) {
+		Object pushed = pushedConstant(insn);
+		Object otherPushed = pushedConstant(other);
+		if (pushed != null || otherPushed != null) {
+			return Objects.equals(pushed, otherPushed);
+		}
+		if (insn.getOpcode() != other.getOpcode()) return false;
+		switch (insn.getType()) {
+		case AbstractInsnNode.INT_INSN:
+			return ((IntInsnNode) insn).operand == ((IntInsnNode) other).operand;
+		case AbstractInsnNode.VAR_INSN:
+			return ((VarInsnNode) insn).var == ((VarInsnNode) other).var;
+		case AbstractInsnNode.TYPE_INSN:
+			return ((TypeInsnNode) insn).desc.equals(((TypeInsnNode) other).desc);
+		case AbstractInsnNode.FIELD_INSN: {
+			FieldInsnNode field = (FieldInsnNode) insn;
+			FieldInsnNode otherField = (FieldInsnNode) other;
+			return field.owner.equals(otherField.owner) && field.name.equals(otherField.name) && field.desc.equals(otherField.desc);
+		}
+		case AbstractInsnNode.METHOD_INSN: {
+			MethodInsnNode invoke = (MethodInsnNode) insn;
+			MethodInsnNode otherInvoke = (MethodInsnNode) other;
+			return invoke.owner.equals(otherInvoke.owner) && invoke.name.equals(otherInvoke.name) && invoke.desc.equals(otherInvoke.desc) && invoke.itf == otherInvoke.itf;
+		}
+		case AbstractInsnNode.INVOKE_DYNAMIC_INSN:
+		case AbstractInsnNode.LDC_INSN:
+			return instruction(insn, labels).equals(instruction(other, otherLabels));
+		case AbstractInsnNode.JUMP_INSN:
+			return labels.get(((JumpInsnNode) insn).label).equals(otherLabels.get(((JumpInsnNode) other).label));
+		case AbstractInsnNode.IINC_INSN:
+			return ((IincInsnNode) insn).var == ((IincInsnNode) other).var && ((IincInsnNode) insn).incr == ((IincInsnNode) other).incr;
+		case AbstractInsnNode.TABLESWITCH_INSN: {
+			TableSwitchInsnNode table = (TableSwitchInsnNode) insn;
+			TableSwitchInsnNode otherTable = (TableSwitchInsnNode) other;
+			return table.min == otherTable.min && table.max == otherTable.max && labels.get(table.dflt).equals(otherLabels.get(otherTable.dflt))
+					&& sameLabels(table.labels, otherTable.labels, labels, otherLabels);
+		}
+		case AbstractInsnNode.LOOKUPSWITCH_INSN: {
+			LookupSwitchInsnNode lookup = (LookupSwitchInsnNode) insn;
+			LookupSwitchInsnNode otherLookup = (LookupSwitchInsnNode) other;
+			return lookup.keys.equals(otherLookup.keys) && labels.get(lookup.dflt).equals(otherLabels.get(otherLookup.dflt))
+					&& sameLabels(lookup.labels, otherLookup.labels, labels, otherLabels);
+		}
+		case AbstractInsnNode.MULTIANEWARRAY_INSN:
+			return ((MultiANewArrayInsnNode) insn).desc.equals(((MultiANewArrayInsnNode) other).desc) && ((MultiANewArrayInsnNode) insn).dims == ((MultiANewArrayInsnNode) other).dims;
+		default:
+			return true;
+		}
+	}
+
+	private static boolean sameLabels(List<LabelNode> list, List<LabelNode> otherList, Map<LabelNode, Integer> labels, Map<LabelNode, Integer> otherLabels) {
+		if (list.size() != otherList.size()) return false;
+		for (int i = 0; i < list.size(); i++) {
+			if (!labels.get(list.get(i)).equals(otherLabels.get(otherList.get(i)))) return false;
+		}
+		return true;
+	}
+
+	private static long mix(long hash, int value) {
+		return (hash ^ value) * 0x100000001b3L;
+	}
+
+	/**
+	 * The number pushed by insn, whichever instruction pushes it, so
+	 * {@code ICONST_1}, {@code BIPUSH 1} and {@code LDC 1} are the same.
+	 */
+	static Object pushedConstant(AbstractInsnNode insn) {
+		int opcode = insn.getOpcode();
+		if (opcode >= Opcodes.ICONST_M1 && opcode <= Opcodes.ICONST_5) {
+			return opcode - Opcodes.ICONST_0;
+		} else if (opcode == Opcodes.LCONST_0 || opcode == Opcodes.LCONST_1) {
+			return (long) (opcode - Opcodes.LCONST_0);
+		} else if (opcode >= Opcodes.FCONST_0 && opcode <= Opcodes.FCONST_2) {
+			return (float) (opcode - Opcodes.FCONST_0);
+		} else if (opcode == Opcodes.DCONST_0 || opcode == Opcodes.DCONST_1) {
+			return (double) (opcode - Opcodes.DCONST_0);
+		} else if (opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH) {
+			return ((IntInsnNode) insn).operand;
+		} else if (opcode == Opcodes.LDC) {
+			Object cst = ((LdcInsnNode) insn).cst;
+			if (cst instanceof Integer || cst instanceof Long || cst instanceof Float || cst instanceof Double) {
+				return cst;
+			}
+		}
+		return null;
+	}
+
+	static ClassNode read(byte[] code) {
+		ClassNode classNode = new ClassNode();
+		new ClassReader(code).accept(classNode, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		return classNode;
+	}
+
+	private static void check(List<String> diffs, String at, String what, Object expected, Object actual) {
+		if (!Objects.equals(expected, actual)) {
+			diffs.add(at + ": " + what + " expected <" + expected + "> but was <" + actual + ">");
+		}
+	}
+
+	/** Instructions as text, labels, line numbers and frames left out. */
+	static List<String> instructions(InsnList insnList) {
+		Map<LabelNode, Integer> labels = labels(insnList);
+		List<String> instructions = new ArrayList<>();
+		for (AbstractInsnNode insn : insnList) {
+			if (insn.getOpcode() >= 0) {
+				instructions.add(instruction(insn, labels));
+			}
+		}
+		return instructions;
+	}
+
+	/** Maps every label to the index of the instruction following it. */
+	static Map<LabelNode, Integer> labels(InsnList insnList) {
+		Map<LabelNode, Integer> labels = new IdentityHashMap<>();
+		int index = 0;
+		for (AbstractInsnNode insn : insnList) {
+			if (insn instanceof LabelNode) {
+				labels.put((LabelNode) insn, index);
+			} else if (insn.getOpcode() >= 0) {
+				index++;
+			}
+		}
+		return labels;
+	}
+
+	static String instruction(AbstractInsnNode insn, Map<LabelNode, Integer> labels) {
+		Object pushed = pushedConstant(insn);
+		if (pushed != null) {
+			return "PUSH " + constant(pushed);
+		}
+		StringBuilder sb = new StringBuilder(Printer.OPCODES[insn.getOpcode()]);
+		switch (insn.getType()) {
+		case AbstractInsnNode.INT_INSN:
+			sb.append(' ').append(((IntInsnNode) insn).operand);
+			break;
+		case AbstractInsnNode.VAR_INSN:
+			sb.append(' ').append(((VarInsnNode) insn).var);
+			break;
+		case AbstractInsnNode.TYPE_INSN:
+			sb.append(' ').append(((TypeInsnNode) insn).desc);
+			break;
+		case AbstractInsnNode.FIELD_INSN: {
+			FieldInsnNode field = (FieldInsnNode) insn;
+			sb.append(' ').append(field.owner).append('.').append(field.name).append(' ').append(field.desc);
+			break;
+		}
+		case AbstractInsnNode.METHOD_INSN: {
+			MethodInsnNode method = (MethodInsnNode) insn;
+			sb.append(' ').append(method.owner).append('.').append(method.name).append(method.desc);
+			if (method.itf) sb.append(" itf");
+			break;
+		}
+		case AbstractInsnNode.INVOKE_DYNAMIC_INSN: {
+			InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+			sb.append(' ').append(indy.name).append(indy.desc).append(' ').append(constant(indy.bsm)).append(' ').append(constant(indy.bsmArgs));
+			break;
+		}
+		case AbstractInsnNode.JUMP_INSN:
+			sb.append(" @").append(labels.get(((JumpInsnNode) insn).label));
+			break;
+		case AbstractInsnNode.LDC_INSN:
+			sb.append(' ').append(constant(((LdcInsnNode) insn).cst));
+			break;
+		case AbstractInsnNode.IINC_INSN:
+			sb.append(' ').append(((IincInsnNode) insn).var).append(' ').append(((IincInsnNode) insn).incr);
+			break;
+		case AbstractInsnNode.TABLESWITCH_INSN: {
+			TableSwitchInsnNode table = (TableSwitchInsnNode) insn;
+			sb.append(' ').append(table.min).append('-').append(table.max).append(" default @").append(labels.get(table.dflt));
+			for (LabelNode label : table.labels) {
+				sb.append(" @").append(labels.get(label));
+			}
+			break;
+		}
+		case AbstractInsnNode.LOOKUPSWITCH_INSN: {
+			LookupSwitchInsnNode lookup = (LookupSwitchInsnNode) insn;
+			sb.append(" default @").append(labels.get(lookup.dflt));
+			for (int i = 0; i < lookup.keys.size(); i++) {
+				sb.append(' ').append(lookup.keys.get(i)).append(" @").append(labels.get(lookup.labels.get(i)));
+			}
+			break;
+		}
+		case AbstractInsnNode.MULTIANEWARRAY_INSN:
+			sb.append(' ').append(((MultiANewArrayInsnNode) insn).desc).append(' ').append(((MultiANewArrayInsnNode) insn).dims);
+			break;
+		default:
+			break;
+		}
+		return sb.toString();
+	}
+
+	private static List<String> tryCatchBlocks(MethodNode method) {
+		Map<LabelNode, Integer> labels = labels(method.instructions);
+		List<String> blocks = new ArrayList<>();
+		for (TryCatchBlockNode block : method.tryCatchBlocks) {
+			blocks.add("@" + labels.get(block.start) + "-@" + labels.get(block.end) + " @" + labels.get(block.handler) + " " + block.type
+					+ typeAnnotations(block.visibleTypeAnnotations, block.invisibleTypeAnnotations));
+		}
+		return blocks;
+	}
+
+	/** Type annotations of instructions and local variables, by instruction index. */
+	private static List<String> instructionTypeAnnotations(MethodNode method) {
+		Map<LabelNode, Integer> labels = labels(method.instructions);
+		List<String> list = new ArrayList<>();
+		int index = 0;
+		for (AbstractInsnNode insn : method.instructions) {
+			if (insn.getOpcode() < 0) continue;
+			List<String> annotations = typeAnnotations(insn.visibleTypeAnnotations, insn.invisibleTypeAnnotations);
+			if (!annotations.isEmpty()) {
+				list.add(index + " " + annotations);
+			}
+			index++;
+		}
+		addLocalVariableAnnotations(list, "", method.visibleLocalVariableAnnotations, labels);
+		addLocalVariableAnnotations(list, "invisible ", method.invisibleLocalVariableAnnotations, labels);
+		return list;
+	}
+
+	private static void addLocalVariableAnnotations(List<String> list, String prefix, List<LocalVariableAnnotationNode> annotations, Map<LabelNode, Integer> labels) {
+		if (annotations == null) return;
+		for (LocalVariableAnnotationNode annotation : annotations) {
+			StringBuilder sb = new StringBuilder(prefix).append("local");
+			for (int i = 0; i < annotation.index.size(); i++) {
+				sb.append(" ").append(annotation.index.get(i)).append(" @").append(labels.get(annotation.start.get(i))).append("-@").append(labels.get(annotation.end.get(i)));
+			}
+			list.add(sb.append(" ").append(typeAnnotation(annotation)).toString());
+		}
+	}
+
+	private static List<String> parameters(List<ParameterNode> parameters) {
+		List<String> list = new ArrayList<>();
+		if (parameters != null) {
+			for (ParameterNode parameter : parameters) {
+				list.add(parameter.name + " " + parameter.access);
+			}
+		}
+		return list;
+	}
+
+	private static List<String> parameterAnnotations(MethodNode method) {
+		List<String> list = new ArrayList<>();
+		list.add("visible " + method.visibleAnnotableParameterCount);
+		if (method.visibleParameterAnnotations != null) {
+			for (int i = 0; i < method.visibleParameterAnnotations.length; i++) {
+				list.add(i + " " + annotations(method.visibleParameterAnnotations[i], null));
+			}
+		}
+		list.add("invisible " + method.invisibleAnnotableParameterCount);
+		if (method.invisibleParameterAnnotations != null) {
+			for (int i = 0; i < method.invisibleParameterAnnotations.length; i++) {
+				list.add(i + " " + annotations(null, method.invisibleParameterAnnotations[i]));
+			}
+		}
+		return list;
+	}
+
+	private static List<String> recordComponents(List<RecordComponentNode> recordComponents) {
+		List<String> list = new ArrayList<>();
+		if (recordComponents != null) {
+			for (RecordComponentNode component : recordComponents) {
+				list.add(component.name + " " + component.descriptor + " " + component.signature + " " + annotations(component.visibleAnnotations, component.invisibleAnnotations)
+						+ typeAnnotations(component.visibleTypeAnnotations, component.invisibleTypeAnnotations) + attributes(component.attrs));
+			}
+		}
+		return list;
+	}
+
+	private static List<String> attributes(List<Attribute> attrs) {
+		List<String> list = new ArrayList<>();
+		if (attrs != null) {
+			for (Attribute attr : attrs) {
+				list.add(attr.type);
+			}
+		}
+		return list;
+	}
+
+	private static List<String> typeAnnotations(List<TypeAnnotationNode> visible, List<TypeAnnotationNode> invisible) {
+		List<String> list = new ArrayList<>();
+		if (visible != null) {
+			for (TypeAnnotationNode annotation : visible) {
+				list.add(typeAnnotation(annotation));
+			}
+		}
+		if (invisible != null) {
+			for (TypeAnnotationNode annotation : invisible) {
+				list.add("invisible " + typeAnnotation(annotation));
+			}
+		}
+		return list;
+	}
+
+	private static String typeAnnotation(TypeAnnotationNode annotation) {
+		return Integer.toHexString(annotation.typeRef) + " " + annotation.typePath + " " + annotation.desc + constant(annotation.values);
+	}
+
+	private static List<String> innerClasses(List<InnerClassNode> innerClasses) {
+		List<String> list = new ArrayList<>();
+		for (InnerClassNode inner : innerClasses) {
+			list.add(inner.name + " " + inner.outerName + " " + inner.innerName + " " + inner.access);
+		}
+		return list;
+	}
+
+	private static List<String> annotations(List<AnnotationNode> visible, List<AnnotationNode> invisible) {
+		List<String> list = new ArrayList<>();
+		if (visible != null) {
+			for (AnnotationNode annotation : visible) {
+				list.add(annotation.desc + constant(annotation.values));
+			}
+		}
+		if (invisible != null) {
+			for (AnnotationNode annotation : invisible) {
+				list.add("invisible " + annotation.desc + constant(annotation.values));
+			}
+		}
+		return list;
+	}
+
+	/** Constants as text, with their type, so 1 and 1L differ. */
+	static String constant(Object value) {
+		if (value == null) {
+			return "null";
+		} else if (value instanceof String) {
+			return "\"" + value + "\"";
+		} else if (value instanceof Type) {
+			return "Type " + ((Type) value).getDescriptor();
+		} else if (value instanceof Handle) {
+			Handle handle = (Handle) value;
+			return "Handle " + handle.getTag() + " " + handle.getOwner() + "." + handle.getName() + handle.getDesc() + (handle.isInterface() ? " itf" : "");
+		} else if (value instanceof AnnotationNode) {
+			AnnotationNode annotation = (AnnotationNode) value;
+			return "@" + annotation.desc + constant(annotation.values);
+		} else if (value instanceof Object[]) {
+			return constant(Arrays.asList((Object[]) value));
+		} else if (value instanceof List) {
+			StringBuilder sb = new StringBuilder("[");
+			for (Object element : (List<?>) value) {
+				if (sb.length() > 1) sb.append(", ");
+				sb.append(constant(element));
+			}
+			return sb.append(']').toString();
+		} else {
+			return value.getClass().getSimpleName() + " " + value;
+		}
+	}
+
+	public static class Result {
+		final List<String> differences = new ArrayList<>();
+		Divergence firstDivergence;
+
+		public boolean isSame() {
+			return differences.isEmpty();
+		}
+
+		public List<String> getDifferences() {
+			return differences;
+		}
+
+		/** The first instruction that differs, or {@literal null}. */
+		public Divergence getFirstDivergence() {
+			return firstDivergence;
+		}
+
+		@Override
+		public String toString() {
+			return differences.isEmpty() ? "same" : String.join("\n", differences);
+		}
+	}
+
+	public static class Divergence {
+		final String method;
+		final int index;
+		final String expected;
+		final String actual;
+
+		Divergence(String method, int index, String expected, String actual) {
+			this.method = method;
+			this.index = index;
+			this.expected = expected;
+			this.actual = actual;
+		}
+
+		/** owner.nameDesc of the method. */
+		public String getMethod() {
+			return method;
+		}
+
+		/** Index of the instruction, labels, line numbers and frames not counted. */
+		public int getIndex() {
+			return index;
+		}
+
+		/** The expected instruction, {@literal null} past the end of the method. */
+		public String getExpected() {
+			return expected;
+		}
+
+		/** The actual instruction, {@literal null} past the end of the method. */
+		public String getActual() {
+			return actual;
+		}
+
+		@Override
+		public String toString() {
+			return method + ": instruction " + index + " expected <" + expected + "> but was <" + actual + ">";
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package cn.sj1.tinyasm.tools;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Does what {@link RefineCode#excludeLineNumber(String)} does to the printed
+ * text on the visitor events instead, before any text exists. Put in front of
+ * the {@code TraceClassVisitor} of {@link TinyASMifier} or {@code ASMifier}.
+ *
+ * Only for printers: with {@link Option#MAXS} the maxs are no longer the real
+ * ones.
+ */
+public class RefineClassVisitor extends ClassVisitor {
+
+	public enum Option {
+		/** drop visitParameter, older java has no MethodParameters */
+		PARAMETERS,
+		/** drop visitFrame */
+		FRAMES,
+		/** drop visitLineNumber */
+		LINE_NUMBERS,
+		/** visitMaxs(1, 1) */
+		MAXS,
+		/**
+		 * keep one of each pair of consecutive CHECKCAST [Ljava/lang/Object;, like the
+		 * text rule: three casts in a row become two. Dropped frames and parameters
+		 * do not separate casts, line numbers do, even when dropped.
+		 */
+		OBJECT_ARRAY_CASTS
+	}
+
+	/** Everything, for ASMifier. */
+	public static final Set<Option> ASMIFIER = Collections.unmodifiableSet(EnumSet.allOf(Option.class));
+
+	/**
+	 * For TinyASMifier, which takes the parameter names from visitParameter and
+	 * prints line numbers and casts itself.
+	 */
+	public static final Set<Option> TINYASMIFIER = Collections.unmodifiableSet(EnumSet.of(Option.FRAMES, Option.MAXS));
+
+	private final Set<Option> options;
+
+	public RefineClassVisitor(ClassVisitor classVisitor, Set<Option> options) {
+		super(Opcodes.ASM8, classVisitor);
+		this.options = options.isEmpty() ? EnumSet.noneOf(Option.class) : EnumSet.copyOf(options);
+	}
+
+	@Override
+	public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+		MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+		return mv == null ? null : new RefineMethodVisitor(mv, options);
+	}
+
+	static class RefineMethodVisitor extends MethodVisitor {
+		private static final String OBJECT_ARRAY = "[Ljava/lang/Object;";
+
+		private final boolean parameters;
+		private final boolean frames;
+		private final boolean lineNumbers;
+		private final boolean maxs;
+		private final boolean objectArrayCasts;
+
+		/** The last instruction was a kept CHECKCAST [Ljava/lang/Object; not paired yet */
+		private boolean castToObjectArray;
+
+		RefineMethodVisitor(MethodVisitor methodVisitor, Set<Option> options) {
+			super(Opcodes.ASM8, methodVisitor);
+			this.parameters = options.contains(Option.PARAMETERS);
+			this.frames = options.contains(Option.FRAMES);
+			this.lineNumbers = options.contains(Option.LINE_NUMBERS);
+			this.maxs = options.contains(Option.MAXS);
+			this.objectArrayCasts = options.contains(Option.OBJECT_ARRAY_CASTS);
+		}
+
+		@Override
+		public void visitParameter(String name, int access) {
+			if (!parameters) super.visitParameter(name, access);
+		}
+
+		@Override
+		public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+			if (frames) return;
+			castToObjectArray = false;
+			super.visitFrame(type, numLocal, local, numStack, stack);
+		}
+
+		@Override
+		public void visitLineNumber(int line, Label start) {
+			// the text rule ran on lines still holding the line number
+			castToObjectArray = false;
+			if (!lineNumbers) super.visitLineNumber(line, start);
+		}
+
+		@Override
+		public void visitMaxs(int maxStack, int maxLocals) {
+			castToObjectArray = false;
+			if (maxs) super.visitMaxs(1, 1);
+			else super.visitMaxs(maxStack, maxLocals);
+		}
+
+		@Override
+		public void visitTypeInsn(int opcode, String type) {
+			boolean cast = opcode == Opcodes.CHECKCAST && OBJECT_ARRAY.equals(type);
+			if (cast && castToObjectArray && objectArrayCasts) {
+				castToObjectArray = false;
+				return;
+			}
+			castToObjectArray = cast;
+			super.visitTypeInsn(opcode, type);
+		}
+
+		@Override
+		public void visitInsn(int opcode) {
+			castToObjectArray = false;
+			super.visitInsn(opcode);
+		}
+
+		@Override
+		public void visitIntInsn(int opcode, int operand) {
+			castToObjectArray = false;
+			super.visitIntInsn(opcode, operand);
+		}
+
+		@Override
+		public void visitVarInsn(int opcode, int var) {
+			castToObjectArray = false;
+			super.visitVarInsn(opcode, var);
+		}
+
+		@Override
+		public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+			castToObjectArray = false;
+			super.visitFieldInsn(opcode, owner, name, descriptor);
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+			castToObjectArray = false;
+			super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+		}
+
+		@Override
+		public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+			castToObjectArray = false;
+			super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+		}
+
+		@Override
+		public void visitJumpInsn(int opcode, Label label) {
+			castToObjectArray = false;
+			super.visitJumpInsn(opcode, label);
+		}
+
+		@Override
+		public void visitLabel(Label label) {
+			castToObjectArray = false;
+			super.visitLabel(label);
+		}
+
+		@Override
+		public void visitLdcInsn(Object value) {
+			castToObjectArray = false;
+			super.visitLdcInsn(value);
+		}
+
+		@Override
+		public void visitIincInsn(int var, int increment) {
+			castToObjectArray = false;
+			super.visitIincInsn(var, increment);
+		}
+
+		@Override
+		public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+			castToObjectArray = false;
+			super.visitTableSwitchInsn(min, max, dflt, labels);
+		}
+
+		@Override
+		public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+			castToObjectArray = false;
+			super.visitLookupSwitchInsn(dflt, keys, labels);
+		}
+
+		@Override
+		public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+			castToObjectArray = false;
+			super.visitMultiANewArrayInsn(descriptor, numDimensions);
+		}
+
+		@Override
+		public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+			castToObjectArray = false;
+			super.visitTryCatchBlock(start, end, handler, type);
+		}
+
+		@Override
+		public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+			castToObjectArray = false;
+			super.visitLocalVariable(name, descriptor, signature, start, end, index);
+		}
+	}
+}
@@ -1,10 +1,15 @@
 package cn.sj1.tinyasm.tools;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.UnaryOperator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -14,10 +19,6 @@ public class RefineCode {
 		STRING, NAME, INT, ACCESS, PARAMS_RET, BOOLEAN, CLAZZARRAY, NORMAL_CLASS_ACCESS, ACC_PUBLIC, CLASSDESCRIPTION, CLASSNAME
 	}
 
-	static final List<String> matches = new ArrayList<>();
-
-	static final List<String> replaces = new ArrayList<>();
-
 	static EnumMap<TYPE, String> mat = new EnumMap<>(TYPE.class);
 	static {
 		mat.put(TYPE.STRING, "((?:\\\"[^\\\"]*\\\")|null)");
@@ -42,18 +43,130 @@ public class RefineCode {
 		mat.put(TYPE.ACC_PUBLIC, "(ACC_PUBLIC)");
 
 //		"Ljava/lang/Object;Lnebula/module/JdbcRowMapper<Lnebula/module/User;>;"
-		prepareMatches();
 	}
 
-	public static void add(String match, String replace) {
-		matches.add(match);
-		replaces.add(replace);
+	private static volatile RefineRuleSet defaultRules = prepareMatches(RefineRuleSet.builder()).build();
+
+	/**
+	 * Replaces the default rules by a copy with one more rule, refinements already
+	 * running keep the rules they started with.
+	 *
+	 * @deprecated build own rules from {@link #prepareMatches(RefineRuleSet.Builder)}
+	 *             or {@link RefineRuleSet#toBuilder()} and pass them in.
+	 */
+	@Deprecated
+	public static synchronized void add(String match, String replace) {
+		defaultRules = defaultRules.toBuilder().add(match, replace).build();
+	}
+
+	/** The rules of {@link #prepareMatches(RefineRuleSet.Builder)}. */
+	public static RefineRuleSet getDefaultRules() {
+		return defaultRules;
 	}
 
+	static final String LOCAL_VARIABLE = "methodVisitor.visitLocalVariable[^\\n]*;\\n";
+	static final String PARAMETER = "methodVisitor.visitParameter[^\\n]*;\\n";
+	static final String FRAME = "methodVisitor.visitFrame[^\\n]*;\\n";
+	static final String OBJECT_ARRAY_CASTS = "methodVisitor.visitTypeInsn\\(CHECKCAST, \"\\[Ljava/lang/Object;\"\\);\\nmethodVisitor.visitTypeInsn\\(CHECKCAST, \"\\[Ljava/lang/Object;\"\\);\\n";
+	static final String OBJECT_ARRAY_CAST = "methodVisitor.visitTypeInsn(CHECKCAST, \"[Ljava/lang/Object;\");\n";
+	static final String LINE_NUMBER = "methodVisitor.visitLineNumber\\(([0-9]+), label([0-9]+)\\);";
+
 	public static String excludeLocalVariable(String input) {
-		input = input.replaceAll("methodVisitor.visitLocalVariable[^\\n]*;\\n", "");
+		input = input.replaceAll(LOCAL_VARIABLE, "");
 		return input;
 	}
+
+	/** {@link #excludeLocalVariable(String)} from in to out, line by line. */
+	public static void excludeLocalVariable(Reader in, Writer out) {
+		transfer(in, RefineLineWriter.replacing(out, LOCAL_VARIABLE, ""));
+	}
+
+	/** {@link #excludeLineNumber(String)} from in to out, line by line. */
+	public static void excludeLineNumber(Reader in, Writer out) {
+		RefineLineWriter writer = RefineLineWriter.replacing(out, LINE_NUMBER, "methodVisitor.visitLineNumber(x,label$2);");
+		writer = new RefineLineWriter.TwoLines(writer, OBJECT_ARRAY_CASTS, OBJECT_ARRAY_CAST, "CHECKCAST");
+		writer = RefineLineWriter.replacing(writer, visit("methodVisitor.visitMaxs", TYPE.INT, TYPE.INT), "methodVisitor.visitMaxs(1, 1);");
+		writer = RefineLineWriter.replacing(writer, FRAME, "");
+		writer = RefineLineWriter.replacing(writer, PARAMETER, "");
+		transfer(in, writer);
+	}
+
+	public static void refineCode(Reader in, Writer out, Class<?>... KnownClasses) {
+		refineCode(defaultRules, in, out, KnownClasses);
+	}
+
+	/**
+	 * {@link #refineCode(RefineRuleSet, String, Class...)} from in to out, line by
+	 * line. Lines are kept only until the class name is read from cw.visit, which
+	 * comes before the first field or method.
+	 */
+	public static void refineCode(RefineRuleSet rules, Reader in, Writer out, Class<?>... KnownClasses) {
+		transfer(in, new RefineLineWriter(out, UnaryOperator.identity()) {
+			List<String> head = new ArrayList<>();
+			RefineLineWriter refine;
+
+			@Override
+			protected void line(String text) throws IOException {
+				if (refine != null) {
+					refine.write(text);
+					return;
+				}
+				head.add(text);
+				String classname = getClasName(text);
+				if (classname != null) start(classname);
+				// no cw.visit before the first field or method, there is none
+				else if (text.startsWith("{")) start(null);
+			}
+
+			@Override
+			protected void end() throws IOException {
+				if (refine == null) start(null);
+				refine.finish();
+			}
+
+			private void start(String classname) throws IOException {
+				out.write("String clazz = \"" + classname + "\";");
+				refine = refineWriter(out, rules, classname, KnownClasses);
+				for (String text : head) {
+					refine.write(text);
+				}
+				head = null;
+			}
+		});
+	}
+
+	private static RefineLineWriter refineWriter(Writer out, RefineRuleSet rules, String classname, Class<?>... KnownClasses) {
+		List<UnaryOperator<String>> steps = new ArrayList<>();
+		steps.add(rules::replaceAll);
+		steps.add(new RefineKnownClasses(KnownClasses, predefineKnownClasses)::replace);
+		steps.add(RefineCode::matchTypeInternalNameToClassName);
+		steps.add(RefineCode::matchTypeDescription);
+		steps.add(replacer("\\\"" + classname + "\\\"", "clazz"));
+
+		RefineLineWriter writer = null;
+		for (int i = steps.size() - 1; i >= 0; i--) {
+			writer = new RefineLineWriter(writer == null ? out : writer, steps.get(i));
+		}
+		return writer;
+	}
+
+	private static UnaryOperator<String> replacer(String regex, String replacement) {
+		Pattern pattern = Pattern.compile(regex);
+		return line -> pattern.matcher(line).replaceAll(replacement);
+	}
+
+	private static void transfer(Reader in, RefineLineWriter writer) {
+		try {
+			char[] buffer = new char[8192];
+			int len;
+			while ((len = in.read(buffer)) > 0) {
+				writer.write(buffer, 0, len);
+			}
+			writer.finish();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
 	// 去新的ASM框架无法处理返回值导致连续无用的ASTORE ALOAD
 //	input = input.replaceAll("methodVisitor[.]visitVarInsn\\(ASTORE, [0-9]*\\);\\n" + "Label label[0-9]+ = new Label\\(\\);\\n"
 //			+ "methodVisitor[.]visitLabel\\(label[0-9]+\\);\\n" + "methodVisitor[.]visitLineNumber\\([0-9]+, label[0-9]+\\);\\n"
@@ -61,13 +174,13 @@ public class RefineCode {
 	public static String excludeLineNumber(String input) {
 		
 		// 移除visitParameter，因为老版本的java不支持这个东东
-		input = input.replaceAll("methodVisitor.visitParameter[^\\n]*;\\n", "");
+		input = input.replaceAll(PARAMETER, "");
 		// 去除所有Frame相关东西
-		input = input.replaceAll("methodVisitor.visitFrame[^\\n]*;\\n", "");
+		input = input.replaceAll(FRAME, "");
 		input = input.replaceAll(visit("methodVisitor.visitMaxs", TYPE.INT, TYPE.INT), "methodVisitor.visitMaxs(1, 1);");
 	
 
-		input = input.replaceAll("methodVisitor.visitTypeInsn\\(CHECKCAST, \"\\[Ljava/lang/Object;\"\\);\\nmethodVisitor.visitTypeInsn\\(CHECKCAST, \"\\[Ljava/lang/Object;\"\\);\\n", "methodVisitor.visitTypeInsn(CHECKCAST, \"[Ljava/lang/Object;\");\n");
+		input = input.replaceAll(OBJECT_ARRAY_CASTS, OBJECT_ARRAY_CAST);
 //		methodVisitor.visitTypeInsn(CHECKCAST, "[Ljava/lang/Object;");
 //		methodVisitor.visitTypeInsn(CHECKCAST, "[Ljava/lang/Object;");
 //		input = input.replaceAll(
@@ -83,7 +196,7 @@ public class RefineCode {
 
 //		input = input.replaceAll("Label label[0-9]+ = new Label\\(\\);\\n", "");
 		// 忽视行号数字
-		input = input.replaceAll("methodVisitor.visitLineNumber\\(([0-9]+), label([0-9]+)\\);", "methodVisitor.visitLineNumber(x,label$2);");
+		input = input.replaceAll(LINE_NUMBER, "methodVisitor.visitLineNumber(x,label$2);");
 //		input = input.replaceAll("methodVisitor.visitLineNumber\\([0-9]+, label[0-9]+\\);\\n", "");
 
 		
@@ -115,208 +228,198 @@ public class RefineCode {
 	}
 
 	public static String matchTypeDescription(String input) {
-		StringBuilder source = new StringBuilder(input);
-		Pattern p = Pattern.compile("L[\\w|\\d]+(?:\\/[\\w|\\d|\\/]+)*;");
-		Matcher m = p.matcher(source); // 获取 matcher 对象
-		while (m.find()) {
-			for (int i = m.start(); i < m.end(); i++) {
-				if (source.charAt(i) == '/') {
-					source.setCharAt(i, '.');
-				}
-			}
-		}
-		return source.toString().replaceAll("L([\\w|\\d]+(?:\\.[\\w|\\d|\\/]+)*);", "$1");
+		return RefineTypeNames.typeDescriptions(input);
 	}
 
 	public static String matchTypeInternalNameToClassName(String input) {
-		StringBuilder source = new StringBuilder(input);
-		Pattern p = Pattern.compile("\\\"[\\w|\\d]+(?:\\/[\\w|\\d|\\/]+)*\\\"");
-		Matcher m = p.matcher(source); // 获取 matcher 对象
-		while (m.find()) {
-			for (int i = m.start(); i < m.end(); i++) {
-				if (source.charAt(i) == '/') {
-					source.setCharAt(i, '.');
-				}
-			}
-		}
-		return source.toString();
+		return RefineTypeNames.internalNamesToClassNames(input);
 	}
 
-	public static void prepareMatches() {
+	public static RefineRuleSet.Builder prepareMatches(RefineRuleSet.Builder rules) {
 		// remove header
 		{
-			add("package (?:[\\w|\\.|\\d]+);\\n", "");
-			add("import java.util.*;\\n", "");
-			add("import org.objectweb.asm.*;\\n", "");
-			add("public class (?:[\\w|\\.|\\d]+) implements Opcodes \\{\\n", "");
+			rules.add("package (?:[\\w|\\.|\\d]+);\\n", "");
+			rules.add("import java.util.*;\\n", "");
+			rules.add("import org.objectweb.asm.*;\\n", "");
+			rules.add("public class (?:[\\w|\\.|\\d]+) implements Opcodes \\{\\n", "");
 
-			add("public static byte\\[\\] dump \\(\\) throws Exception \\{\\n", "");
+			rules.add("public static byte\\[\\] dump \\(\\) throws Exception \\{\\n", "");
 
-			add("ClassWriter cw = new ClassWriter\\(0\\);\\n", "");
-			add("FieldVisitor fv;\\n", "");
-			add("MethodVisitor mv;\\n", "");
-			add("AnnotationVisitor av0;\\n", "");
-			add("cw.visitEnd\\(\\);\\n", "");
-			add("return cw.toByteArray\\(\\);\\n", "return cw.end().toByteArray();\n");
+			rules.add("ClassWriter cw = new ClassWriter\\(0\\);\\n", "");
+			rules.add("FieldVisitor fv;\\n", "");
+			rules.add("MethodVisitor mv;\\n", "");
+			rules.add("AnnotationVisitor av0;\\n", "");
+			rules.add("cw.visitEnd\\(\\);\\n", "");
+			rules.add("return cw.toByteArray\\(\\);\\n", "return cw.end().toByteArray();\n");
 
-			add(visit("cw.visitInnerClass", TYPE.STRING, TYPE.STRING, TYPE.STRING, TYPE.ACCESS), "cw.referInnerClass($2,$3);/*$4*/\n");
+			rules.add(visit("cw.visitInnerClass", TYPE.STRING, TYPE.STRING, TYPE.STRING, TYPE.ACCESS), "cw.referInnerClass($2,$3);/*$4*/\n");
 
 		}
 
 		// class
 		{
 
-			add(visit("cw.visit", TYPE.INT, TYPE.NORMAL_CLASS_ACCESS, TYPE.CLASSNAME, TYPE.STRING, TYPE.CLASSNAME, TYPE.CLAZZARRAY),
+			rules.add(visit("cw.visit", TYPE.INT, TYPE.NORMAL_CLASS_ACCESS, TYPE.CLASSNAME, TYPE.STRING, TYPE.CLASSNAME, TYPE.CLAZZARRAY),
 					"ClassBody cw = ClassBuilder.make($3).eXtend($5).body()/*$4 $6*/;");
-			add(visit("cw.visit", TYPE.INT, TYPE.ACCESS, TYPE.CLASSNAME, TYPE.CLASSNAME, TYPE.CLASSDESCRIPTION, TYPE.CLAZZARRAY),
+			rules.add(visit("cw.visit", TYPE.INT, TYPE.ACCESS, TYPE.CLASSNAME, TYPE.CLASSNAME, TYPE.CLASSDESCRIPTION, TYPE.CLAZZARRAY),
 					"ClassBody cw = ClassBuilder.make($2,$3).eXtend($5).body()/*$4 $6*/;");
-			add(".eXtend\\(\\\"java/lang/Object\\\"\\)", "");
-			add("cw.visitSource\\(" + mat.get(TYPE.STRING) + ", null\\);\n", "");
+			rules.add(".eXtend\\(\\\"java/lang/Object\\\"\\)", "");
+			rules.add("cw.visitSource\\(" + mat.get(TYPE.STRING) + ", null\\);\n", "");
 		}
 
 		// field
 		{
 
-			add(visit("fv = cw.visitField", TYPE.ACCESS, TYPE.STRING, TYPE.STRING, TYPE.STRING, TYPE.STRING), "cw.field($1,$2,$3);\n");
-			add("fv.visitEnd\\(\\);\n", "");
+			rules.add(visit("fv = cw.visitField", TYPE.ACCESS, TYPE.STRING, TYPE.STRING, TYPE.STRING, TYPE.STRING), "cw.field($1,$2,$3);\n");
+			rules.add("fv.visitEnd\\(\\);\n", "");
 		}
 		// method
 		// mv = cw.visitMethod(ACC_PUBLIC + ACC_STATIC, "dump", "()[B", null, new
 		// String[] { "java/lang/Exception" });
 		{
-			add(visit("mv = cw.visitMethod", TYPE.ACC_PUBLIC, TYPE.STRING, TYPE.PARAMS_RET, TYPE.STRING, TYPE.CLAZZARRAY),
+			rules.add(visit("mv = cw.visitMethod", TYPE.ACC_PUBLIC, TYPE.STRING, TYPE.PARAMS_RET, TYPE.STRING, TYPE.CLAZZARRAY),
 					"cw.method($2).parameter(\"name\",\"$3\").reTurn(\"$4\")/*$5*//*$6*/\n");
 
-			add(visit("mv = cw.visitMethod", TYPE.ACCESS, TYPE.STRING, TYPE.PARAMS_RET, TYPE.STRING, TYPE.CLAZZARRAY),
+			rules.add(visit("mv = cw.visitMethod", TYPE.ACCESS, TYPE.STRING, TYPE.PARAMS_RET, TYPE.STRING, TYPE.CLAZZARRAY),
 					"cw.method($1,$2).parameter(\"name\",\"$3\").reTurn(\"$4\")/*$5*//*$6*/\n");
 
-			add("methodVisitor.visitCode\\(\\);", ".code(mv -> {");
-			add("methodVisitor.visitEnd\\(\\);", "});");
-			add("\\.reTurn\\(V\\)", "");
-			add("/\\*null\\*/", "");
+			rules.add("methodVisitor.visitCode\\(\\);", ".code(mv -> {");
+			rules.add("methodVisitor.visitEnd\\(\\);", "});");
+			rules.add("\\.reTurn\\(V\\)", "");
+			rules.add("/\\*null\\*/", "");
 
-			add(".parameter\\(\\\"name\\\",\\\"\\\"\\)", "");
+			rules.add(".parameter\\(\\\"name\\\",\\\"\\\"\\)", "");
 
 		}
 		{
-			add("Label l\\d* = new Label\\(\\);\n", "");
-			add("methodVisitor.visitLabel\\(l\\d*\\);\n", "");
-			add(visit("methodVisitor.visitLabel", TYPE.NAME), "");
-			add(visit("methodVisitor.visitLineNumber", TYPE.INT, TYPE.NAME), "methodVisitor.line();\n");
-			add(visit("methodVisitor.visitMaxs", TYPE.INT, TYPE.INT), "");
-			add(visit("methodVisitor.visitTypeInsn", "NEW", TYPE.STRING), "methodVisitor.NEW($1);\n");
-			add(visit("methodVisitor.visitInsn", "DUP"), "methodVisitor.DUP();\n");
-			add(visit("methodVisitor.visitInsn", "POP"), "methodVisitor.POP();\n");
-			add(visit("methodVisitor.visitInsn", "RETURN"), "methodVisitor.RETURN();\n");
-			add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]RETURN"), "methodVisitor.RETURNTop();\n");
-
-			add(visit("methodVisitor.visitVarInsn", "[A|I|L|F|D]LOAD", TYPE.INT), "methodVisitor.LOAD($1);\n");
-			add(visit("methodVisitor.visitVarInsn", "[A|I|L|F|D]STORE", TYPE.INT), "methodVisitor.STORE($1);\n");
-
-			add(visit("methodVisitor.visitInsn", "AASTORE"), "methodVisitor.ARRAYSTORE();\n");
-
-			add(visit("methodVisitor.visitInsn", "ATHROW"), "methodVisitor.ATHROW();\n");
-
-			add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]ADD"), "methodVisitor.ADD();\n");
-			add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]SUB"), "methodVisitor.SUB();\n");
-			add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]MUL"), "methodVisitor.MUL();\n");
-			add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]DIV"), "methodVisitor.DIV();\n");
-			add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]REM"), "methodVisitor.REM();\n");
-			add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]AND"), "methodVisitor.AND();\n");
-			add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]OR"), "methodVisitor.OR();\n");
-			add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]XOR"), "methodVisitor.XOR();\n");
-			add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]SHL"), "methodVisitor.SHL();\n");
-			add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]SHR"), "methodVisitor.SHR();\n");
-			add(visit("methodVisitor.visitInsn", "(\\w2\\w)"), "methodVisitor.$1();\n");
-
-			add(visit("methodVisitor.visitIntInsn", "BIPUSH", TYPE.INT), "methodVisitor.LOADConst($1);\n");
-
-			add(visit("methodVisitor.visitTypeInsn", "NEW", TYPE.STRING), "methodVisitor.NEW($1);\n");
-			add(visit("methodVisitor.visitTypeInsn", "CHECKCAST", TYPE.STRING), "methodVisitor.CHECKCAST($1);\n");
-
-			add("methodVisitor.visitInsn\\(ICONST_(\\d*)\\);\n", "methodVisitor.LOADConst($1);\n");
-
-			add(visit("methodVisitor.visitFieldInsn", "PUTSTATIC", TYPE.STRING, TYPE.STRING, TYPE.STRING),
+			rules.add("Label l\\d* = new Label\\(\\);\n", "");
+			rules.add("methodVisitor.visitLabel\\(l\\d*\\);\n", "");
+			rules.add(visit("methodVisitor.visitLabel", TYPE.NAME), "");
+			rules.add(visit("methodVisitor.visitLineNumber", TYPE.INT, TYPE.NAME), "methodVisitor.line();\n");
+			rules.add(visit("methodVisitor.visitMaxs", TYPE.INT, TYPE.INT), "");
+			rules.add(visit("methodVisitor.visitTypeInsn", "NEW", TYPE.STRING), "methodVisitor.NEW($1);\n");
+			rules.add(visit("methodVisitor.visitInsn", "DUP"), "methodVisitor.DUP();\n");
+			rules.add(visit("methodVisitor.visitInsn", "POP"), "methodVisitor.POP();\n");
+			rules.add(visit("methodVisitor.visitInsn", "RETURN"), "methodVisitor.RETURN();\n");
+			rules.add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]RETURN"), "methodVisitor.RETURNTop();\n");
+
+			rules.add(visit("methodVisitor.visitVarInsn", "[A|I|L|F|D]LOAD", TYPE.INT), "methodVisitor.LOAD($1);\n");
+			rules.add(visit("methodVisitor.visitVarInsn", "[A|I|L|F|D]STORE", TYPE.INT), "methodVisitor.STORE($1);\n");
+
+			rules.add(visit("methodVisitor.visitInsn", "AASTORE"), "methodVisitor.ARRAYSTORE();\n");
+
+			rules.add(visit("methodVisitor.visitInsn", "ATHROW"), "methodVisitor.ATHROW();\n");
+
+			rules.add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]ADD"), "methodVisitor.ADD();\n");
+			rules.add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]SUB"), "methodVisitor.SUB();\n");
+			rules.add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]MUL"), "methodVisitor.MUL();\n");
+			rules.add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]DIV"), "methodVisitor.DIV();\n");
+			rules.add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]REM"), "methodVisitor.REM();\n");
+			rules.add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]AND"), "methodVisitor.AND();\n");
+			rules.add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]OR"), "methodVisitor.OR();\n");
+			rules.add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]XOR"), "methodVisitor.XOR();\n");
+			rules.add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]SHL"), "methodVisitor.SHL();\n");
+			rules.add(visit("methodVisitor.visitInsn", "[A|I|L|F|D]SHR"), "methodVisitor.SHR();\n");
+			rules.add(visit("methodVisitor.visitInsn", "(\\w2\\w)"), "methodVisitor.$1();\n");
+
+			rules.add(visit("methodVisitor.visitIntInsn", "BIPUSH", TYPE.INT), "methodVisitor.LOADConst($1);\n");
+
+			rules.add(visit("methodVisitor.visitTypeInsn", "NEW", TYPE.STRING), "methodVisitor.NEW($1);\n");
+			rules.add(visit("methodVisitor.visitTypeInsn", "CHECKCAST", TYPE.STRING), "methodVisitor.CHECKCAST($1);\n");
+
+			rules.add("methodVisitor.visitInsn\\(ICONST_(\\d*)\\);\n", "methodVisitor.LOADConst($1);\n");
+
+			rules.add(visit("methodVisitor.visitFieldInsn", "PUTSTATIC", TYPE.STRING, TYPE.STRING, TYPE.STRING),
 					"methodVisitor.PUTSTATIC($1,$2,$3);\n");
 
-			add(visit("methodVisitor.visitFieldInsn", "GETSTATIC", TYPE.STRING, TYPE.STRING, TYPE.STRING),
+			rules.add(visit("methodVisitor.visitFieldInsn", "GETSTATIC", TYPE.STRING, TYPE.STRING, TYPE.STRING),
 					"methodVisitor.GETSTATIC($1,$2,$3);\n");
 
-			add(visit("methodVisitor.visitFieldInsn", "PUTFIELD", TYPE.STRING, TYPE.STRING, TYPE.STRING),
+			rules.add(visit("methodVisitor.visitFieldInsn", "PUTFIELD", TYPE.STRING, TYPE.STRING, TYPE.STRING),
 					"methodVisitor.PUTFIELD($2,$3);\n");
 
-			add(visit("methodVisitor.visitFieldInsn", "GETFIELD", TYPE.STRING, TYPE.STRING, TYPE.STRING),
+			rules.add(visit("methodVisitor.visitFieldInsn", "GETFIELD", TYPE.STRING, TYPE.STRING, TYPE.STRING),
 					"methodVisitor.GETFIELD($2,$3);\n");
 
-			add(visit("methodVisitor.visitLdcInsn", TYPE.STRING), "methodVisitor.LOADConst($1);\n");
+			rules.add(visit("methodVisitor.visitLdcInsn", TYPE.STRING), "methodVisitor.LOADConst($1);\n");
 
-			add("methodVisitor.visitLdcInsn\\((new Long\\(\\d*L\\))\\);", "methodVisitor.LOADConst($1);\n");
+			rules.add("methodVisitor.visitLdcInsn\\((new Long\\(\\d*L\\))\\);", "methodVisitor.LOADConst($1);\n");
 
-			add(visit("methodVisitor.visitLocalVariable", "\\\"this\\\"", TYPE.STRING, TYPE.STRING, TYPE.NAME, TYPE.NAME, TYPE.INT), "");
+			rules.add(visit("methodVisitor.visitLocalVariable", "\\\"this\\\"", TYPE.STRING, TYPE.STRING, TYPE.NAME, TYPE.NAME, TYPE.INT), "");
 
-			add(visit("methodVisitor.visitLocalVariable", TYPE.STRING, TYPE.STRING, TYPE.STRING, TYPE.NAME, TYPE.NAME, TYPE.INT),
+			rules.add(visit("methodVisitor.visitLocalVariable", TYPE.STRING, TYPE.STRING, TYPE.STRING, TYPE.NAME, TYPE.NAME, TYPE.INT),
 					"methodVisitor.define($1,$2);/*$6*/\n");
 
-			add(visit("methodVisitor.visitMethodInsn", "INVOKESPECIAL", TYPE.STRING, TYPE.STRING, TYPE.PARAMS_RET, TYPE.BOOLEAN),
+			rules.add(visit("methodVisitor.visitMethodInsn", "INVOKESPECIAL", TYPE.STRING, TYPE.STRING, TYPE.PARAMS_RET, TYPE.BOOLEAN),
 					"methodVisitor.SPECIAL($1,$2).parameter(\"$3\").reTurn(\"$4\").INVOKE();\n");
-			add(visit("methodVisitor.visitMethodInsn", "INVOKESTATIC", TYPE.STRING, TYPE.STRING, TYPE.PARAMS_RET, TYPE.BOOLEAN),
+			rules.add(visit("methodVisitor.visitMethodInsn", "INVOKESTATIC", TYPE.STRING, TYPE.STRING, TYPE.PARAMS_RET, TYPE.BOOLEAN),
 					"methodVisitor.STATIC($1,$2).parameter(\"$3\").reTurn(\"$4\").INVOKE();\n");
-			add(visit("methodVisitor.visitMethodInsn", "INVOKEVIRTUAL", TYPE.STRING, TYPE.STRING, TYPE.PARAMS_RET, TYPE.BOOLEAN),
+			rules.add(visit("methodVisitor.visitMethodInsn", "INVOKEVIRTUAL", TYPE.STRING, TYPE.STRING, TYPE.PARAMS_RET, TYPE.BOOLEAN),
 					"methodVisitor.VIRTUAL($1,$2).parameter(\"$3\").reTurn(\"$4\").INVOKE();\n");
-			add(visit("methodVisitor.visitMethodInsn", "INVOKEINTERFACE", TYPE.STRING, TYPE.STRING, TYPE.PARAMS_RET, TYPE.BOOLEAN),
+			rules.add(visit("methodVisitor.visitMethodInsn", "INVOKEINTERFACE", TYPE.STRING, TYPE.STRING, TYPE.PARAMS_RET, TYPE.BOOLEAN),
 					"methodVisitor.INTERFACE($1,$2).parameter(\"$3\").reTurn(\"$4\").INVOKE();\n");
 
-			add("\\.parameter\\(\"\"\\)", "");
-			add("\\.parameter\\(\"J\"\\)", ".parameter(long.class)");
-			add("\\.parameter\\(\"I\"\\)", ".parameter(int.class)");
-			add("\\.reTurn\\(\"V\"\\)", "");
-			add("\\.reTurn\\(\"Z\"\\)", ".reTurn(boolean.class)");
-			add("\\.reTurn\\(\"I\"\\)", ".reTurn(int.class)");
-			add("\\.reTurn\\(\"J\"\\)", ".reTurn(long.class)");
-
-			add("\\\"Ljava/lang/String;\\\"", "String.class");
-			add("\\\"Ljava/lang/Object;\\\"", "Object.class");
-			add("\\\"java/lang/String\\\"", "String.class");
-			add("\\\"java/lang/Object\\\"", "Object.class");
+			rules.add("\\.parameter\\(\"\"\\)", "");
+			rules.add("\\.parameter\\(\"J\"\\)", ".parameter(long.class)");
+			rules.add("\\.parameter\\(\"I\"\\)", ".parameter(int.class)");
+			rules.add("\\.reTurn\\(\"V\"\\)", "");
+			rules.add("\\.reTurn\\(\"Z\"\\)", ".reTurn(boolean.class)");
+			rules.add("\\.reTurn\\(\"I\"\\)", ".reTurn(int.class)");
+			rules.add("\\.reTurn\\(\"J\"\\)", ".reTurn(long.class)");
+
+			rules.add("\\\"Ljava/lang/String;\\\"", "String.class");
+			rules.add("\\\"Ljava/lang/Object;\\\"", "Object.class");
+			rules.add("\\\"java/lang/String\\\"", "String.class");
+			rules.add("\\\"java/lang/Object\\\"", "Object.class");
 		}
+		return rules;
 	}
 
 	static Class<?>[] predefineKnownClasses = new Class<?>[] { String.class, List.class, ArrayList.class, Map.class, HashMap.class };
 
 	public static String refineCode(String source, Class<?>... KnownClasses) {
+		return refineCode(defaultRules, source, KnownClasses);
+	}
+
+	public static String refineCode(RefineRuleSet rules, String source, Class<?>... KnownClasses) {
 		String classname = getClasName(source);
 
-		source = replaceAll(source);
+		source = refiner(rules, classname, KnownClasses).apply(source);
+		source = "String clazz = \"" + classname + "\";" + source;
 
-		for (Class<?> clazz : KnownClasses) {
-			String string = clazz.getName();
-			String iname = string.replace(".", "/");
-			String clzname = string.substring(string.lastIndexOf('.') + 1, string.length());
-			source = source.replaceAll("\\\"L" + iname + ";\\\"", clzname + ".class");
-			source = source.replaceAll("\\\"" + iname + "\\\"", clzname + ".class");
-		}
-		for (Class<?> clazz : predefineKnownClasses) {
-			String string = clazz.getName();
-			String iname = string.replace(".", "/");
-			String clzname = string.substring(string.lastIndexOf('.') + 1, string.length());
-			source = source.replaceAll("\\\"L" + iname + ";\\\"", clzname + ".class");
-			source = source.replaceAll("\\\"" + iname + "\\\"", clzname + ".class");
-		}
+		return source;
+	}
 
-		source = matchTypeInternalNameToClassName(source);
-		source = matchTypeDescription(source);
+	/**
+	 * {@link #refineCode(RefineRuleSet, String, Class...)} with the fields and
+	 * methods refined in parallel on pool, for large classes.
+	 */
+	public static String refineCode(RefineRuleSet rules, String source, ForkJoinPool pool, Class<?>... KnownClasses) {
+		String classname = getClasName(source);
 
-		source = source.replaceAll("\\\"" + classname + "\\\"", "clazz");
+		source = RefineSections.refine(source, refiner(rules, classname, KnownClasses), pool);
 		source = "String clazz = \"" + classname + "\";" + source;
 
 		return source;
 	}
 
+	private static UnaryOperator<String> refiner(RefineRuleSet rules, String classname, Class<?>... KnownClasses) {
+		RefineKnownClasses knownClasses = new RefineKnownClasses(KnownClasses, predefineKnownClasses);
+		Pattern clazz = Pattern.compile("\\\"" + classname + "\\\"");
+		return source -> {
+			source = rules.replaceAll(source);
+
+			source = knownClasses.replace(source);
+
+			source = matchTypeInternalNameToClassName(source);
+			source = matchTypeDescription(source);
+
+			return clazz.matcher(source).replaceAll("clazz");
+		};
+	}
+
 	public static String replaceAll(String input) {
-		for (int i = 0; i < matches.size(); i++) {
-			input = input.replaceAll(matches.get(i), replaces.get(i));
-		}
-		return input;
+		return defaultRules.replaceAll(input);
 	}
 
 	public static String skipToString(String input) {
@@ -0,0 +1,57 @@
+package cn.sj1.tinyasm.tools;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replaces the quoted internal names and descriptors of known classes, like
+ * {@code "java/util/List"} and {@code "Ljava/util/List;"}, by {@code List.class}
+ * in one pass. Every name to replace is a whole string literal, so instead of a
+ * pattern per class the source is scanned from quote to quote and every literal
+ * is looked up: the cost does not depend on how many classes are known.
+ */
+public class RefineKnownClasses {
+
+	private final Map<String, String> replaces = new HashMap<>();
+	private int minLength = Integer.MAX_VALUE;
+	private int maxLength = 0;
+
+	public RefineKnownClasses(Class<?>[]... classes) {
+		for (Class<?>[] list : classes) {
+			for (Class<?> clazz : list) {
+				String string = clazz.getName();
+				// $ ended the regex this replaces, so nested classes never matched
+				if (string.indexOf('$') >= 0) continue;
+				String iname = string.replace(".", "/");
+				String clzname = string.substring(string.lastIndexOf('.') + 1, string.length());
+				replaces.putIfAbsent("\"L" + iname + ";\"", clzname + ".class");
+				replaces.putIfAbsent("\"" + iname + "\"", clzname + ".class");
+				minLength = Math.min(minLength, iname.length() + 2);
+				maxLength = Math.max(maxLength, iname.length() + 5);
+			}
+		}
+	}
+
+	public String replace(String source) {
+		StringBuilder sb = null;
+		int copied = 0;
+		int start = source.indexOf('"');
+		while (start >= 0) {
+			int end = source.indexOf('"', start + 1);
+			if (end < 0) break;
+			int length = end + 1 - start;
+			String replace = length < minLength || length > maxLength ? null : replaces.get(source.substring(start, end + 1));
+			if (replace != null) {
+				if (sb == null) sb = new StringBuilder(source.length());
+				sb.append(source, copied, start).append(replace);
+				copied = end + 1;
+				start = source.indexOf('"', copied);
+			} else {
+				// the closing quote may open the next literal
+				start = end;
+			}
+		}
+		if (sb == null) return source;
+		return sb.append(source, copied, source.length()).toString();
+	}
+}
@@ -0,0 +1,137 @@
+package cn.sj1.tinyasm.tools;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A Writer that cuts what is written into lines and writes each line, refined,
+ * to out. A line keeps its line feed, the last line may have none and is
+ * refined on {@link #finish()}.
+ *
+ * Refining line by line gives the same result as refining the whole text at
+ * once as long as no match crosses a line feed, which holds for the patterns
+ * of {@link RefineCode}. A refined line that lost its line feed is joined with
+ * the next one by the following writer of the chain, as it would be in the
+ * whole text.
+ */
+public class RefineLineWriter extends Writer {
+
+	protected final Writer out;
+	private final UnaryOperator<String> refine;
+	private final StringBuilder line = new StringBuilder();
+
+	public RefineLineWriter(Writer out, UnaryOperator<String> refine) {
+		this.out = out;
+		this.refine = refine;
+	}
+
+	/** {@code String.replaceAll(regex, replacement)} on every line. */
+	public static RefineLineWriter replacing(Writer out, String regex, String replacement) {
+		Pattern pattern = Pattern.compile(regex);
+		return new RefineLineWriter(out, line -> pattern.matcher(line).replaceAll(replacement));
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		int end = off + len;
+		int start = off;
+		for (int i = off; i < end; i++) {
+			if (cbuf[i] == '\n') {
+				line.append(cbuf, start, i + 1 - start);
+				start = i + 1;
+				writeLine();
+			}
+		}
+		line.append(cbuf, start, end - start);
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		int end = off + len;
+		int start = off;
+		int i;
+		while ((i = str.indexOf('\n', start)) >= 0 && i < end) {
+			line.append(str, start, i + 1);
+			start = i + 1;
+			writeLine();
+		}
+		line.append(str, start, end);
+	}
+
+	private void writeLine() throws IOException {
+		String text = line.toString();
+		line.setLength(0);
+		line(text);
+	}
+
+	/** Refines one line and writes it to out. */
+	protected void line(String text) throws IOException {
+		out.write(refine.apply(text));
+	}
+
+	/** Refines the last line and finishes out if it is a RefineLineWriter too, out stays open. */
+	public void finish() throws IOException {
+		if (line.length() > 0) writeLine();
+		end();
+		if (out instanceof RefineLineWriter) ((RefineLineWriter) out).finish();
+		out.flush();
+	}
+
+	/** Called by {@link #finish()} after the last line, to write what is held back. */
+	protected void end() throws IOException {
+	}
+
+	/** Does not flush the line not yet ended. */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+		out.close();
+	}
+
+	/**
+	 * {@code String.replaceAll(regex, replacement)} for a regex that matches two
+	 * whole lines, the first of them from somewhere in it: keeps one line back.
+	 */
+	public static class TwoLines extends RefineLineWriter {
+		private final Pattern pattern;
+		private final String replacement;
+		private final String hint;
+		private String held;
+
+		/** hint is a literal every second line of a match contains. */
+		public TwoLines(Writer out, String regex, String replacement, String hint) {
+			super(out, UnaryOperator.identity());
+			this.pattern = Pattern.compile(regex);
+			this.replacement = replacement;
+			this.hint = hint;
+		}
+
+		@Override
+		protected void line(String text) throws IOException {
+			if (held != null && text.contains(hint)) {
+				Matcher matcher = pattern.matcher(held + text);
+				if (matcher.find()) {
+					held = null;
+					out.write(matcher.replaceFirst(replacement));
+					return;
+				}
+			}
+			if (held != null) out.write(held);
+			held = text;
+		}
+
+		@Override
+		protected void end() throws IOException {
+			if (held != null) out.write(held);
+			held = null;
+		}
+	}
+}
@@ -0,0 +1,214 @@
+package cn.sj1.tinyasm.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The rules of {@link RefineCode#replaceAll(String)}, compiled once. Every rule
+ * is indexed by a literal its matches must contain, taken from the start of its
+ * pattern, and the input is refined in a single pass, line by line: each line
+ * goes through the rules in order, but only through those whose literal occurs
+ * in it.
+ *
+ * The rules only match within a line, up to and including its line feed, so
+ * this gives the same result as running every rule over the whole input one
+ * after another.
+ *
+ * A rule set never changes once built, it can be shared by any number of
+ * threads. Build one with {@link #builder()}, or extend one with
+ * {@link #toBuilder()}.
+ */
+public class RefineRuleSet {
+
+	static class Rule {
+		final Pattern pattern;
+		final String replacement;
+		/** Index of the literal in {@link RefineRuleSet#literals}, -1 if none. */
+		final int literal;
+
+		Rule(Pattern pattern, String replacement, int literal) {
+			this.pattern = pattern;
+			this.replacement = replacement;
+			this.literal = literal;
+		}
+	}
+
+	public static class Builder {
+		private final List<String> matches = new ArrayList<>();
+		private final List<String> replaces = new ArrayList<>();
+
+		/** Adds a rule applied after those added before, as {@code String.replaceAll(match, replace)}. */
+		public Builder add(String match, String replace) {
+			matches.add(match);
+			replaces.add(replace);
+			return this;
+		}
+
+		public RefineRuleSet build() {
+			return new RefineRuleSet(matches, replaces);
+		}
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	final List<String> matches;
+	final List<String> replaces;
+	final List<Rule> rules;
+	final String[] literals;
+
+	private RefineRuleSet(List<String> matches, List<String> replaces) {
+		this.matches = Collections.unmodifiableList(new ArrayList<>(matches));
+		this.replaces = Collections.unmodifiableList(new ArrayList<>(replaces));
+		List<Rule> rules = new ArrayList<>(matches.size());
+		List<String> literals = new ArrayList<>();
+		Map<String, Integer> literalIndex = new HashMap<>();
+		for (int i = 0; i < matches.size(); i++) {
+			String literal = requiredLiteral(matches.get(i));
+			int index = -1;
+			if (literal.length() > 0) {
+				Integer known = literalIndex.get(literal);
+				if (known == null) {
+					known = literals.size();
+					literals.add(literal);
+					literalIndex.put(literal, known);
+				}
+				index = known;
+			}
+			rules.add(new Rule(Pattern.compile(matches.get(i)), replaces.get(i), index));
+		}
+		this.rules = Collections.unmodifiableList(rules);
+		this.literals = literals.toArray(new String[literals.size()]);
+	}
+
+	/** A builder with the rules of this set, to add more. */
+	public Builder toBuilder() {
+		Builder builder = new Builder();
+		for (int i = 0; i < matches.size(); i++) {
+			builder.add(matches.get(i), replaces.get(i));
+		}
+		return builder;
+	}
+
+	public int size() {
+		return rules.size();
+	}
+
+	public List<String> getMatches() {
+		return matches;
+	}
+
+	public List<String> getReplaces() {
+		return replaces;
+	}
+
+	public String replaceAll(String input) {
+		StringBuilder sb = new StringBuilder(input.length());
+		// per line: 0 unknown, 1 present, 2 absent
+		byte[] present = new byte[literals.length];
+		int start = 0;
+		while (start < input.length()) {
+			int end = input.indexOf('\n', start);
+			end = end < 0 ? input.length() : end + 1;
+			sb.append(replaceLine(input.substring(start, end), present));
+			start = end;
+		}
+		return sb.toString();
+	}
+
+	private String replaceLine(String line, byte[] present) {
+		Arrays.fill(present, (byte) 0);
+		for (Rule rule : rules) {
+			if (rule.literal >= 0) {
+				if (present[rule.literal] == 0) {
+					present[rule.literal] = line.contains(literals[rule.literal]) ? (byte) 1 : (byte) 2;
+				}
+				if (present[rule.literal] == 2) continue;
+			}
+			Matcher matcher = rule.pattern.matcher(line);
+			if (matcher.find()) {
+				line = replaceAll(matcher, rule.replacement);
+				Arrays.fill(present, (byte) 0);
+			}
+		}
+		return line;
+	}
+
+	/** {@link Matcher#replaceAll(String)}, continuing from the find already done. */
+	private static String replaceAll(Matcher matcher, String replacement) {
+		StringBuffer sb = new StringBuffer();
+		do {
+			matcher.appendReplacement(sb, replacement);
+		} while (matcher.find());
+		matcher.appendTail(sb);
+		return sb.toString();
+	}
+
+	/**
+	 * A literal every match of regex contains: the longest run of plain
+	 * characters among those the pattern starts with, where runs are separated by
+	 * {@code .}. Empty when the pattern does not start with plain characters or
+	 * has an alternative at the top level.
+	 */
+	static String requiredLiteral(String regex) {
+		if (hasTopLevelAlternative(regex)) return "";
+		String best = "";
+		StringBuilder current = new StringBuilder();
+		int i = 0;
+		scan: while (i < regex.length()) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				if (i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) break;
+				current.append(regex.charAt(i + 1));
+				i += 2;
+			} else if (c == '.') {
+				if (current.length() > best.length()) best = current.toString();
+				current.setLength(0);
+				i++;
+				if (i < regex.length() && "*+?{".indexOf(regex.charAt(i)) >= 0) break scan;
+				continue;
+			} else if ("[](){}^$|*+?".indexOf(c) >= 0) {
+				break;
+			} else {
+				current.append(c);
+				i++;
+			}
+			if (i < regex.length() && "*+?{".indexOf(regex.charAt(i)) >= 0) {
+				// the last character is optional or repeated
+				current.setLength(current.length() - 1);
+				break;
+			}
+		}
+		if (current.length() > best.length()) best = current.toString();
+		return best;
+	}
+
+	private static boolean hasTopLevelAlternative(String regex) {
+		int depth = 0;
+		boolean inClass = false;
+		for (int i = 0; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (inClass) {
+				if (c == ']') inClass = false;
+			} else if (c == '[') {
+				inClass = true;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == '|' && depth == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
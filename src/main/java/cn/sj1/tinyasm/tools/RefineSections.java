@@ -0,0 +1,85 @@
+package cn.sj1.tinyasm.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Refines a dump section by section in parallel. ASMifier writes every field
+ * and method as a block from a line {@code {} to a line {@code }}, so the
+ * source is cut right before a block that follows another one. Every step of
+ * {@link RefineCode#refineCode(RefineRuleSet, String, Class...)} matches within
+ * a line, and these lines are left as they are, so refining the sections apart
+ * and joining them gives the same text as refining the whole.
+ */
+class RefineSections {
+
+	/** Blocks are joined until a section has this many chars. */
+	static final int SECTION_SIZE = 1 << 15;
+
+	private static final String BOUNDARY = "\n}\n{\n";
+
+	static String refine(String source, UnaryOperator<String> refine, ForkJoinPool pool) {
+		List<String> sections = split(source, SECTION_SIZE);
+		if (sections.size() == 1) return refine.apply(source);
+
+		String[] refined = new String[sections.size()];
+		pool.invoke(new RefineTask(sections, 0, sections.size(), refine, refined));
+		int length = 0;
+		for (String section : refined) {
+			length += section.length();
+		}
+		StringBuilder sb = new StringBuilder(length);
+		for (String section : refined) {
+			sb.append(section);
+		}
+		return sb.toString();
+	}
+
+	/** Cuts source before the blocks, keeping at least size chars in a section. */
+	static List<String> split(String source, int size) {
+		List<String> sections = new ArrayList<>();
+		int start = 0;
+		int boundary = source.indexOf(BOUNDARY, start + size);
+		while (boundary >= 0) {
+			int end = boundary + 3;
+			sections.add(source.substring(start, end));
+			start = end;
+			boundary = source.indexOf(BOUNDARY, start + size);
+		}
+		sections.add(source.substring(start));
+		return sections;
+	}
+
+	static class RefineTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final List<String> sections;
+		final int from;
+		final int to;
+		final UnaryOperator<String> refine;
+		final String[] refined;
+
+		RefineTask(List<String> sections, int from, int to, UnaryOperator<String> refine, String[] refined) {
+			this.sections = sections;
+			this.from = from;
+			this.to = to;
+			this.refine = refine;
+			this.refined = refined;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new RefineTask(sections, from, middle, refine, refined), new RefineTask(sections, middle, to, refine, refined));
+				return;
+			}
+			for (int i = from; i < to; i++) {
+				refined[i] = refine.apply(sections.get(i));
+			}
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package cn.sj1.tinyasm.tools;
+
+/**
+ * Scanners behind {@link RefineCode#matchTypeInternalNameToClassName(String)}
+ * and {@link RefineCode#matchTypeDescription(String)}. They find exactly what
+ * the regexes they replace found, but rewrite a per thread buffer in place
+ * instead of a StringBuilder per call, and return the input itself when there
+ * is nothing to rewrite.
+ *
+ * A word character here is what {@code [\w|\d]} matches: ASCII letters, digits,
+ * {@code _} and {@code |}.
+ */
+final class RefineTypeNames {
+
+	/** Larger inputs get a buffer of their own, it is not kept. */
+	private static final int MAX_KEPT_BUFFER = 1 << 20;
+
+	private static final ThreadLocal<char[]> buffers = ThreadLocal.withInitial(() -> new char[8192]);
+
+	private RefineTypeNames() {
+	}
+
+	/**
+	 * {@code "a/b/C"} to {@code "a.b.C"}, for every quoted
+	 * {@code "[\w|\d]+(?:/[\w|\d|/]+)*"}.
+	 */
+	static String internalNamesToClassNames(String input) {
+		int n = input.length();
+		char[] c = buffer(input);
+		boolean changed = false;
+		for (int i = 0; i < n; i++) {
+			if (c[i] != '"') continue;
+			int j = i + 1;
+			if (j >= n || !isWord(c[j])) continue;
+			int slash = -1;
+			for (; j < n && (isWord(c[j]) || c[j] == '/'); j++) {
+				if (slash < 0 && c[j] == '/') slash = j;
+			}
+			if (j < n && c[j] == '"' && (slash < 0 || slash + 1 < j)) {
+				if (slash >= 0) {
+					toDots(c, slash, j);
+					changed = true;
+				}
+				i = j;
+			} else {
+				// no quote before j, but c[j] may open the next name
+				i = j - 1;
+			}
+		}
+		return changed ? new String(c, 0, n) : input;
+	}
+
+	/**
+	 * {@code La/b/C;} to {@code a.b.C}: first turns every
+	 * {@code L[\w|\d]+(?:/[\w|\d|/]+)*;} into {@code La.b.C;}, then strips
+	 * {@code L} and {@code ;} from every {@code L[\w|\d]+(?:\.[\w|\d|/]+)*;}.
+	 */
+	static String typeDescriptions(String input) {
+		int n = input.length();
+		char[] c = buffer(input);
+		boolean changed = false;
+		for (int p = 0; p < n; p++) {
+			if (c[p] != 'L') continue;
+			int q = p + 1;
+			if (q >= n || !isWord(c[q])) continue;
+			int slash = -1;
+			for (; q < n && (isWord(c[q]) || c[q] == '/'); q++) {
+				if (slash < 0 && c[q] == '/') slash = q;
+			}
+			if (q < n && c[q] == ';' && slash >= 0 && slash + 1 < q) {
+				toDots(c, slash, q);
+				changed = true;
+			}
+			// an L before q ends where this one ends, and fails if this one failed
+			p = q;
+		}
+
+		int w = 0;
+		int p = 0;
+		while (p < n) {
+			if (c[p] == 'L') {
+				int end = dottedDescriptionEnd(c, p, n);
+				if (end >= 0) {
+					System.arraycopy(c, p + 1, c, w, end - p - 1);
+					w += end - p - 1;
+					p = end + 1;
+					changed = true;
+				} else {
+					// an L before the end of the first word ends the same way
+					end = -1 - end;
+					System.arraycopy(c, p, c, w, end - p);
+					w += end - p;
+					p = end;
+				}
+			} else {
+				c[w++] = c[p++];
+			}
+		}
+		return changed ? new String(c, 0, w) : input;
+	}
+
+	/**
+	 * The index of the ; of {@code L[\w|\d]+(?:\.[\w|\d|/]+)*;} at p, -1 - the
+	 * end of the word after L when there is none.
+	 */
+	private static int dottedDescriptionEnd(char[] c, int p, int n) {
+		int a = p + 1;
+		while (a < n && isWord(c[a])) a++;
+		if (a == p + 1) return -1 - a;
+		int q = a;
+		while (q + 1 < n && c[q] == '.' && (isWord(c[q + 1]) || c[q + 1] == '/')) {
+			q += 2;
+			while (q < n && (isWord(c[q]) || c[q] == '/')) q++;
+		}
+		return q < n && c[q] == ';' ? q : -1 - a;
+	}
+
+	private static void toDots(char[] c, int from, int to) {
+		for (int k = from; k < to; k++) {
+			if (c[k] == '/') c[k] = '.';
+		}
+	}
+
+	private static boolean isWord(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '|';
+	}
+
+	private static char[] buffer(String input) {
+		int n = input.length();
+		char[] buffer = buffers.get();
+		if (buffer.length < n) {
+			buffer = new char[Math.max(n, buffer.length * 2)];
+			if (buffer.length <= MAX_KEPT_BUFFER) buffers.set(buffer);
+		}
+		input.getChars(0, n, buffer, 0);
+		return buffer;
+	}
+}
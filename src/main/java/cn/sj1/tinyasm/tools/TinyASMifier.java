@@ -29,6 +29,7 @@ package cn.sj1.tinyasm.tools;
 
 import static org.objectweb.asm.Opcodes.*;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -371,6 +372,8 @@ public class TinyASMifier extends Printer {
 
 	@Override
 	public Printer visitMethod(final int access, final String name, final String descriptor, final String signature, final String[] exceptions) {
+		// the previous method has ended, its text will not change any more
+		flushMethods();
 
 		this.tiny_methodSignatureParamClazzList = null;
 		this.tiny_methodSignatureTypeParameterClassList = null;
@@ -389,7 +392,10 @@ public class TinyASMifier extends Printer {
 		asmifier.tiny_methodIsStatic = this.tiny_methodIsStatic;
 		asmifier.tiny_className = this.tiny_className;
 
-		asmifier.tiny_referedTypes = this.tiny_referedTypes;
+		// each method refers to types in a map of its own, merged in visitClassEnd,
+		// so methods may be printed on different threads
+		asmifier.tiny_referedTypes = new HashMap<String, String>();
+		tiny_methodReferedTypes.add(asmifier.tiny_referedTypes);
 		asmifier.classDefinedClassParameters = this.classDefinedClassParameters;
 		asmifier.methodUsedClassParameters = methodUsedClassParameters;
 		asmifier.classDefinedClassParameterNames = this.classDefinedClassParameterNames;
@@ -401,11 +407,55 @@ public class TinyASMifier extends Printer {
 
 	@Override
 	public void visitClassEnd() {
+		flushMethods();
+		for (Map<String, String> referedTypes : tiny_methodReferedTypes) {
+			tiny_referedTypes.putAll(referedTypes);
+		}
+		tiny_methodReferedTypes.clear();
 		text.add("\n");
 		text.add("\t\treturn classBody.end().toByteArray();\n");
 		text.add("\t}\n\n");
-		text.add(tiny_textMethods);
-		text.add("}\n");
+		if (tiny_methodSink == null) {
+			text.add(tiny_textMethods);
+			text.add("}\n");
+		}
+	}
+
+	/**
+	 * Streams the source of every method to sink as soon as the method is
+	 * finished, instead of keeping it until {@link #print}. {@link #print} then
+	 * only prints the class header, which has to wait for the imports, and the
+	 * build method, without the closing brace of the class. The caller writes the
+	 * header, then what went to sink, then "}\n".
+	 * A method is written when the next one starts, so methods must then be
+	 * visited one after the other.
+	 *
+	 * @param sink where the methods go.
+	 * @return this printer.
+	 */
+	public TinyASMifier streamMethodsTo(Appendable sink) {
+		this.tiny_methodSink = sink;
+		return this;
+	}
+
+	private void flushMethods() {
+		if (tiny_methodSink == null || tiny_textMethods.isEmpty()) return;
+		try {
+			appendText(tiny_methodSink, tiny_textMethods);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		tiny_textMethods.clear();
+	}
+
+	static void appendText(Appendable out, List<?> list) throws IOException {
+		for (Object o : list) {
+			if (o instanceof List) {
+				appendText(out, (List<?>) o);
+			} else {
+				out.append(o.toString());
+			}
+		}
 	}
 
 	// -----------------------------------------------------------------------------------------------
@@ -1701,6 +1751,8 @@ public class TinyASMifier extends Printer {
 
 	List<Object> tiny_textMethods = new ArrayList<Object>();
 
+	Appendable tiny_methodSink;
+
 	DefineVariables tiny_defineVariables = new DefineVariables();
 
 	Annotation tiny_annotation;
@@ -1738,6 +1790,9 @@ public class TinyASMifier extends Printer {
 
 	Map<String, String> tiny_referedTypes = new HashMap<String, String>();
 
+	/** Types the methods refer to, added to {@link #tiny_referedTypes} at the end of the class. */
+	List<Map<String, String>> tiny_methodReferedTypes = new ArrayList<>();
+
 	/**
 	 * ================================================================================================================
 	 * 
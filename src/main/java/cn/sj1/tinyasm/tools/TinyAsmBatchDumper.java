@@ -0,0 +1,203 @@
+package cn.sj1.tinyasm.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.objectweb.asm.ClassReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts every class of a jar file or a class directory to a
+ * {@code *TinyAsmDump.java} source file, one {@link TinyASMifier} per class,
+ * spread over a {@link ForkJoinPool}.
+ */
+public class TinyAsmBatchDumper {
+	static Logger logger = LoggerFactory.getLogger(TinyAsmBatchDumper.class);
+
+	/** Entries per task below which a task stops splitting. */
+	private static final int THRESHOLD = 8;
+
+	private final File target;
+	private final ForkJoinPool pool;
+
+	public TinyAsmBatchDumper(File target) {
+		this(target, ForkJoinPool.commonPool());
+	}
+
+	public TinyAsmBatchDumper(File target, ForkJoinPool pool) {
+		this.target = target;
+		this.pool = pool;
+	}
+
+	public Report dump(File source) {
+		if (source.isDirectory()) {
+			return dumpDirectory(source);
+		} else {
+			return dumpJar(source);
+		}
+	}
+
+	public Report dumpJar(File jar) {
+		return readJar(jar, this::dump);
+	}
+
+	public Report dumpDirectory(File directory) {
+		return readDirectory(directory, this::dump);
+	}
+
+	/** Hands the class entries of a jar file or a class directory, and how to read them, to action. */
+	static <T> T readClasses(File source, BiFunction<List<String>, ClassSource, T> action) {
+		if (source.isDirectory()) {
+			return readDirectory(source, action);
+		} else {
+			return readJar(source, action);
+		}
+	}
+
+	static <T> T readJar(File jar, BiFunction<List<String>, ClassSource, T> action) {
+		try (ZipFile zipFile = new ZipFile(jar)) {
+			List<String> entries = new ArrayList<>();
+			Enumeration<? extends ZipEntry> e = zipFile.entries();
+			while (e.hasMoreElements()) {
+				ZipEntry entry = e.nextElement();
+				if (!entry.isDirectory() && isClassFile(entry.getName())) {
+					entries.add(entry.getName());
+				}
+			}
+			// ZipFile is safe to read from several threads at once
+			return action.apply(entries, name -> {
+				try (InputStream is = zipFile.getInputStream(zipFile.getEntry(name))) {
+					return TinyAsmTestUtils.readFully(is);
+				}
+			});
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static <T> T readDirectory(File directory, BiFunction<List<String>, ClassSource, T> action) {
+		try (Stream<Path> paths = Files.walk(directory.toPath())) {
+			List<String> entries = paths.filter(Files::isRegularFile).map(Path::toString).filter(TinyAsmBatchDumper::isClassFile).collect(Collectors.toList());
+			return action.apply(entries, name -> Files.readAllBytes(new File(name).toPath()));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public Report dump(List<String> entries, ClassSource source) {
+		Report report = new Report();
+		long start = System.nanoTime();
+		pool.invoke(new DumpTask(entries, 0, entries.size(), source, report));
+		report.elapsedNanos = System.nanoTime() - start;
+		logger.info("{}", report);
+		return report;
+	}
+
+	protected void dumpClass(byte[] code) {
+		String className = new ClassReader(code).getClassName().replace('/', '.');
+		String dumpCode = TinyAsmTestUtils.tinyasmToString(code);
+		TinyAsmTestUtils.writeToFile(dumpCode, new File(target, className.replace('.', '/') + "TinyAsmDump.java"));
+	}
+
+	static boolean isClassFile(String name) {
+		return name.endsWith(".class") && !name.endsWith("module-info.class");
+	}
+
+	public interface ClassSource {
+		byte[] read(String entry) throws IOException;
+	}
+
+	class DumpTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final List<String> entries;
+		final int from;
+		final int to;
+		final ClassSource source;
+		final Report report;
+
+		DumpTask(List<String> entries, int from, int to, ClassSource source, Report report) {
+			this.entries = entries;
+			this.from = from;
+			this.to = to;
+			this.source = source;
+			this.report = report;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new DumpTask(entries, from, middle, source, report), new DumpTask(entries, middle, to, source, report));
+				return;
+			}
+			for (int i = from; i < to; i++) {
+				String entry = entries.get(i);
+				try {
+					dumpClass(source.read(entry));
+					report.classes.incrementAndGet();
+				} catch (Exception e) {
+					logger.warn("dump {} failed: {}", entry, e.toString());
+					report.failures.add(entry);
+				}
+			}
+		}
+	}
+
+	public static class Report {
+		final AtomicInteger classes = new AtomicInteger();
+		final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+		long elapsedNanos;
+
+		public int getClasses() {
+			return classes.get();
+		}
+
+		public List<String> getFailures() {
+			return failures;
+		}
+
+		public long getElapsedMillis() {
+			return elapsedNanos / 1000000;
+		}
+
+		public double getClassesPerSecond() {
+			return elapsedNanos > 0 ? classes.get() * 1000000000d / elapsedNanos : 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("dumped %d classes (%d failed) in %d ms, %.1f classes/sec", classes.get(), failures.size(), getElapsedMillis(), getClassesPerSecond());
+		}
+	}
+
+	/**
+	 * Usage: TinyAsmBatchDumper &lt;jar or class directory&gt; &lt;target
+	 * directory&gt; [parallelism]
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: TinyAsmBatchDumper <jar or class directory> <target directory> [parallelism]");
+			return;
+		}
+		ForkJoinPool pool = args.length > 2 ? new ForkJoinPool(Integer.parseInt(args[2])) : ForkJoinPool.commonPool();
+		Report report = new TinyAsmBatchDumper(new File(args[1]), pool).dump(new File(args[0]));
+		System.out.println(report);
+	}
+}
@@ -0,0 +1,137 @@
+package cn.sj1.tinyasm.tools;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out class loader generations for generated classes and keeps count of
+ * those still alive. A {@link Generation} defines classes straight from their
+ * bytes; once nothing refers to the generation, its classes or their instances
+ * any more, the collector unloads it as a unit and the metaspace is given back.
+ */
+public class TinyAsmClassLoaders {
+
+	private static final TinyAsmClassLoaders defaultLoaders = new TinyAsmClassLoaders(ClassLoader.getSystemClassLoader());
+
+	public static TinyAsmClassLoaders getDefault() {
+		return defaultLoaders;
+	}
+
+	private final ClassLoader parent;
+	private final ReferenceQueue<Generation> queue = new ReferenceQueue<>();
+	private final Set<Tracker> live = ConcurrentHashMap.newKeySet();
+
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong unloaded = new AtomicLong();
+
+	public TinyAsmClassLoaders(ClassLoader parent) {
+		this.parent = parent;
+	}
+
+	public Generation newGeneration() {
+		expunge();
+		Generation generation = new Generation(parent, created.incrementAndGet());
+		live.add(new Tracker(generation, queue));
+		return generation;
+	}
+
+	/** Generations not collected yet, whether they are still used or not. */
+	public int getLiveLoaders() {
+		expunge();
+		return live.size();
+	}
+
+	/** Classes defined by generations not collected yet. */
+	public int getLiveClasses() {
+		expunge();
+		int classes = 0;
+		for (Tracker tracker : live) {
+			classes += tracker.classes.get();
+		}
+		return classes;
+	}
+
+	public long getCreatedLoaders() {
+		return created.get();
+	}
+
+	public long getUnloadedLoaders() {
+		expunge();
+		return unloaded.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d live loaders with %d classes, %d created, %d unloaded", getLiveLoaders(), getLiveClasses(), created.get(), unloaded.get());
+	}
+
+	private void expunge() {
+		Reference<? extends Generation> reference;
+		while ((reference = queue.poll()) != null) {
+			if (live.remove(reference)) {
+				unloaded.incrementAndGet();
+			}
+		}
+	}
+
+	/** Refers to a generation weakly, and to its class count strongly. */
+	static class Tracker extends WeakReference<Generation> {
+		final AtomicInteger classes;
+
+		Tracker(Generation generation, ReferenceQueue<Generation> queue) {
+			super(generation, queue);
+			this.classes = generation.classes;
+		}
+	}
+
+	/**
+	 * Defines the classes given to {@link #addClasses} when they are first loaded.
+	 * Anything else is looked up in the parent.
+	 */
+	public static class Generation extends ClassLoader {
+		static {
+			registerAsParallelCapable();
+		}
+
+		final long id;
+		final Map<String, byte[]> pending = new ConcurrentHashMap<>();
+		final AtomicInteger classes = new AtomicInteger();
+
+		Generation(ClassLoader parent, long id) {
+			super(parent);
+			this.id = id;
+		}
+
+		public Generation addClasses(Map<String, byte[]> classes) {
+			pending.putAll(classes);
+			return this;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			byte[] code = pending.remove(name);
+			if (code == null) {
+				throw new ClassNotFoundException(name);
+			}
+			Class<?> clazz = defineClass(name, code, 0, code.length);
+			classes.incrementAndGet();
+			return clazz;
+		}
+
+		/** Number of classes defined by this generation. */
+		public int getClasses() {
+			return classes.get();
+		}
+
+		@Override
+		public String toString() {
+			return "Generation#" + id;
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package cn.sj1.tinyasm.tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of compiler and standard file manager pairs. A file manager
+ * keeps its class path and jar indexes between compilations, so borrowing a
+ * warm one is much cheaper than creating a new one per compile. A file manager
+ * is not thread safe, a lease is used by one caller at a time.
+ *
+ * <pre>
+ * try (TinyAsmCompilerPool.Lease lease = TinyAsmCompilerPool.getDefault().borrow()) {
+ * 	lease.getCompiler().getTask(null, lease.getFileManager(), ...).call();
+ * }
+ * </pre>
+ */
+public class TinyAsmCompilerPool implements Closeable {
+	static Logger logger = LoggerFactory.getLogger(TinyAsmCompilerPool.class);
+
+	private static final TinyAsmCompilerPool defaultPool = new TinyAsmCompilerPool(Runtime.getRuntime().availableProcessors());
+
+	public static TinyAsmCompilerPool getDefault() {
+		return defaultPool;
+	}
+
+	private final int maxSize;
+	private final BlockingQueue<Lease> idle = new LinkedBlockingQueue<>();
+	private final AtomicInteger created = new AtomicInteger();
+	private final AtomicInteger waiting = new AtomicInteger();
+
+	private final AtomicLong borrows = new AtomicLong();
+	private final AtomicLong waits = new AtomicLong();
+	private final AtomicLong waitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	public TinyAsmCompilerPool(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns an idle pair, creates one while the pool is below its size, or else
+	 * waits until another caller gives one back.
+	 */
+	public Lease borrow() {
+		borrows.incrementAndGet();
+		Lease lease = idle.poll();
+		if (lease != null) {
+			return lease;
+		}
+		while (true) {
+			int size = created.get();
+			if (size >= maxSize) break;
+			if (created.compareAndSet(size, size + 1)) {
+				try {
+					JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+					if (compiler == null) {
+						throw new RuntimeException("No system java compiler, run on a JDK");
+					}
+					return new Lease(compiler, compiler.getStandardFileManager(null, null, null));
+				} catch (RuntimeException | Error e) {
+					created.decrementAndGet();
+					throw e;
+				}
+			}
+		}
+
+		long start = System.nanoTime();
+		waiting.incrementAndGet();
+		try {
+			lease = idle.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} finally {
+			waiting.decrementAndGet();
+		}
+		long waited = System.nanoTime() - start;
+		waits.incrementAndGet();
+		waitNanos.addAndGet(waited);
+		maxWaitNanos.accumulateAndGet(waited, Math::max);
+		logger.debug("waited {} us for a compiler", waited / 1000);
+		return lease;
+	}
+
+	void giveBack(Lease lease) {
+		try {
+			lease.fileManager.flush();
+		} catch (IOException e) {
+			logger.warn("flush file manager failed: {}", e.toString());
+		}
+		idle.add(lease);
+	}
+
+	/** Closes the idle file managers. Leases given back later are kept. */
+	@Override
+	public void close() {
+		Lease lease;
+		while ((lease = idle.poll()) != null) {
+			try {
+				lease.fileManager.close();
+			} catch (IOException e) {
+				logger.warn("close file manager failed: {}", e.toString());
+			}
+			created.decrementAndGet();
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public int getCreated() {
+		return created.get();
+	}
+
+	public long getBorrows() {
+		return borrows.get();
+	}
+
+	/** Number of borrows that had to wait for a pair to be given back. */
+	public long getWaits() {
+		return waits.get();
+	}
+
+	/** Number of callers waiting in {@link #borrow()} right now. */
+	public int getWaiting() {
+		return waiting.get();
+	}
+
+	public long getWaitNanos() {
+		return waitNanos.get();
+	}
+
+	public long getMaxWaitNanos() {
+		return maxWaitNanos.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d of %d compilers, %d borrows, %d waited %.1f ms in total, %.1f ms at most", created.get(), maxSize, borrows.get(), waits.get(), waitNanos.get() / 1000000d,
+				maxWaitNanos.get() / 1000000d);
+	}
+
+	public class Lease implements AutoCloseable {
+		final JavaCompiler compiler;
+		final StandardJavaFileManager fileManager;
+
+		Lease(JavaCompiler compiler, StandardJavaFileManager fileManager) {
+			this.compiler = compiler;
+			this.fileManager = fileManager;
+		}
+
+		public JavaCompiler getCompiler() {
+			return compiler;
+		}
+
+		public StandardJavaFileManager getFileManager() {
+			return fileManager;
+		}
+
+		/** Gives the pair back to the pool, the file manager stays open. */
+		@Override
+		public void close() {
+			giveBack(this);
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package cn.sj1.tinyasm.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Keeps generated sources keyed by a hash of the class bytes and of the
+ * parameters given to {@link TinyASMifier#TinyASMifier(List, List)}, so
+ * unchanged classes are not visited and refined again. Least recently used
+ * entries are evicted once {@code maxSize} is reached. When a
+ * {@link TinyAsmDumpStore} is given, misses fall back to it and new sources are
+ * written through to it, so they survive the JVM.
+ */
+public class TinyAsmDumpCache {
+
+	private final Map<Key, String> cache;
+
+	private final TinyAsmDumpStore store;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public TinyAsmDumpCache(final int maxSize) {
+		this(maxSize, null);
+	}
+
+	public TinyAsmDumpCache(final int maxSize, TinyAsmDumpStore store) {
+		this.store = store;
+		this.cache = new LinkedHashMap<Key, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	public String get(Key key) {
+		String code;
+		synchronized (cache) {
+			code = cache.get(key);
+		}
+		if (code == null && store != null) {
+			code = store.get(key);
+			if (code != null) {
+				synchronized (cache) {
+					cache.put(key, code);
+				}
+			}
+		}
+		if (code != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return code;
+	}
+
+	public void put(Key key, String code) {
+		synchronized (cache) {
+			cache.put(key, code);
+		}
+		if (store != null) {
+			store.put(key, code);
+		}
+	}
+
+	/**
+	 * Returns the cached source for key, or generates it outside of the cache
+	 * lock and keeps it. Two threads missing the same key at once may both
+	 * generate it.
+	 */
+	public String get(Key key, Supplier<String> generator) {
+		String code = get(key);
+		if (code == null) {
+			code = generator.get();
+			put(key, code);
+		}
+		return code;
+	}
+
+	public TinyAsmDumpStore getStore() {
+		return store;
+	}
+
+	/** Clears the entries kept in memory, the store is left untouched. */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public static Key keyOf(byte[] code, List<String> names, List<Object> classes) {
+		MessageDigest digest = newDigest();
+		digest.update(GENERATOR);
+		digest.update(code);
+		for (String name : names) {
+			digest.update((byte) 0);
+			digest.update(name.getBytes(StandardCharsets.UTF_8));
+		}
+		for (Object value : classes) {
+			digest.update((byte) 1);
+			if (value instanceof Class) {
+				digest.update(((Class<?>) value).getName().getBytes(StandardCharsets.UTF_8));
+			} else {
+				digest.update((byte) 2);
+				digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		return new Key(digest.digest());
+	}
+
+	/**
+	 * Raised by hand when the output changes in a way the class files do not
+	 * show, like a change of a dependency.
+	 */
+	static final int GENERATOR_VERSION = 1;
+
+	/**
+	 * Hash of {@link #GENERATOR_VERSION} and of every class file of this package,
+	 * inner classes and helpers like {@link ClassSignature} included, so entries
+	 * kept in a {@link TinyAsmDumpStore} by another version are not served.
+	 */
+	static final byte[] GENERATOR = generator();
+
+	private static byte[] generator() {
+		MessageDigest digest = newDigest();
+		digest.update(ByteBuffer.allocate(4).putInt(GENERATOR_VERSION).array());
+		String packagePath = TinyASMifier.class.getPackage().getName().replace('.', '/') + "/";
+		try {
+			CodeSource source = TinyASMifier.class.getProtectionDomain().getCodeSource();
+			File location = source == null ? null : new File(source.getLocation().toURI());
+			if (location != null && location.isDirectory()) {
+				File[] files = new File(location, packagePath).listFiles((dir, name) -> name.endsWith(".class"));
+				if (files != null) {
+					Arrays.sort(files);
+					for (File file : files) {
+						digest.update(file.getName().getBytes(StandardCharsets.UTF_8));
+						digest.update(Files.readAllBytes(file.toPath()));
+					}
+				}
+			} else if (location != null && location.isFile()) {
+				try (JarFile jar = new JarFile(location)) {
+					List<JarEntry> entries = new ArrayList<>();
+					for (Enumeration<JarEntry> e = jar.entries(); e.hasMoreElements();) {
+						JarEntry entry = e.nextElement();
+						String name = entry.getName();
+						if (name.startsWith(packagePath) && name.endsWith(".class") && name.indexOf('/', packagePath.length()) < 0) entries.add(entry);
+					}
+					entries.sort((e1, e2) -> e1.getName().compareTo(e2.getName()));
+					for (JarEntry entry : entries) {
+						digest.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+						try (InputStream is = jar.getInputStream(entry)) {
+							digest.update(TinyAsmTestUtils.readFully(is));
+						}
+					}
+				}
+			}
+		} catch (IOException | URISyntaxException e) {
+			throw new RuntimeException(e);
+		}
+		return digest.digest();
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public static final class Key {
+		final byte[] hash;
+		private final int hashCode;
+
+		Key(byte[] hash) {
+			this.hash = hash;
+			this.hashCode = Arrays.hashCode(hash);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && Arrays.equals(hash, ((Key) obj).hash);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (byte b : hash) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		}
+	}
+}
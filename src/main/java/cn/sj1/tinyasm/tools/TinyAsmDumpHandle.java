@@ -0,0 +1,47 @@
+package cn.sj1.tinyasm.tools;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A compiled {@code *TinyAsmDump} class, ready to rebuild the class it was
+ * generated from.
+ */
+public class TinyAsmDumpHandle {
+
+	private final String className;
+	private final Class<?> dumpClass;
+
+	public TinyAsmDumpHandle(String className, Class<?> dumpClass) {
+		this.className = className;
+		this.dumpClass = dumpClass;
+	}
+
+	public String getClassName() {
+		return className;
+	}
+
+	public Class<?> getDumpClass() {
+		return dumpClass;
+	}
+
+	/** Calls the static {@code dump()} of the dump class. */
+	public byte[] dump() {
+		return TinyAsmTestUtils.invokeDump(dumpClass);
+	}
+
+	/** Calls {@code build(className)} of a dump generated without parameters. */
+	public byte[] build() {
+		return build(Collections.emptyList());
+	}
+
+	/** Calls {@code build(className, paramVales...)} of a new dump instance. */
+	public byte[] build(List<Object> paramVales) {
+		return TinyAsmTestUtils.invokeBuild(dumpClass, className, paramVales);
+	}
+
+	@Override
+	public String toString() {
+		return dumpClass.getName();
+	}
+}
@@ -0,0 +1,379 @@
+package cn.sj1.tinyasm.tools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps generated sources on disk between runs: an append only data file
+ * {@code dumps.dat} and a memory mapped open addressing hash table
+ * {@code dumps.idx} from {@link TinyAsmDumpCache.Key} to the offset and length
+ * of the source in the data file.
+ *
+ * <pre>
+ * index  = magic:int version:int capacity:int count:int generator:byte[32] slot[capacity]
+ * slot   = key:byte[32] offset+1:long length:int unused:int
+ * </pre>
+ *
+ * An offset of 0 marks an empty slot. The index grows in place, it is never
+ * replaced while mapped. A store written by another
+ * {@link TinyAsmDumpCache#GENERATOR} is started anew, and sources no longer in
+ * the index are dropped by {@link #compact()}. The data file is locked while
+ * the store is open, so only one process uses a store directory at a time.
+ */
+public class TinyAsmDumpStore implements Closeable {
+	static Logger logger = LoggerFactory.getLogger(TinyAsmDumpStore.class);
+
+	private static final int MAGIC = 0x54414453;
+	private static final int VERSION = 2;
+
+	private static final int KEY_SIZE = 32;
+	private static final int HEADER_SIZE = 16 + KEY_SIZE;
+	private static final int SLOT_SIZE = 48;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final File indexFile;
+	private final FileChannel data;
+	private final FileLock lock;
+	private final byte[] generator;
+
+	/** Read locked while sources are read or written, write locked to move them. */
+	private final ReadWriteLock dataLock = new ReentrantReadWriteLock();
+	private final AtomicLong end = new AtomicLong();
+
+	private MappedByteBuffer slots;
+	private int capacity;
+	private int count;
+	private long live;
+
+	public TinyAsmDumpStore(File directory) throws IOException {
+		this(directory, TinyAsmDumpCache.GENERATOR);
+	}
+
+	TinyAsmDumpStore(File directory, byte[] generator) throws IOException {
+		if (!directory.exists()) {
+			directory.mkdirs();
+		}
+		this.generator = generator;
+		this.indexFile = new File(directory, "dumps.idx");
+		this.data = FileChannel.open(new File(directory, "dumps.dat").toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		FileLock fileLock;
+		try {
+			fileLock = data.tryLock();
+		} catch (OverlappingFileLockException e) {
+			fileLock = null;
+		}
+		if (fileLock == null) {
+			data.close();
+			throw new IOException("Dump store " + directory + " is in use");
+		}
+		this.lock = fileLock;
+
+		if (indexFile.exists() && indexFile.length() >= HEADER_SIZE) {
+			try (FileChannel index = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				slots = index.map(MapMode.READ_WRITE, 0, index.size());
+			}
+			capacity = slots.getInt(8);
+			count = slots.getInt(12);
+			if (slots.getInt(0) != MAGIC || slots.getInt(4) != VERSION || capacity <= 0 || slots.capacity() < HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+				logger.warn("Dump store index {} is corrupt, starting a new one", indexFile);
+				reset();
+			} else if (!sameGenerator()) {
+				logger.info("Dump store {} was written by another generator, starting a new one", directory);
+				reset();
+			}
+		} else {
+			reset();
+		}
+
+		for (int slot = 0; slot < capacity; slot++) {
+			int position = HEADER_SIZE + slot * SLOT_SIZE;
+			if (slots.getLong(position + KEY_SIZE) != 0) {
+				live += slots.getInt(position + KEY_SIZE + 8);
+			}
+		}
+		end.set(data.size());
+		if (end.get() > 2 * live) {
+			compact();
+		}
+	}
+
+	/**
+	 * Opens the store in directory, or returns {@literal null} if it cannot be
+	 * opened, for example because another process holds it.
+	 */
+	public static TinyAsmDumpStore open(File directory) {
+		try {
+			return new TinyAsmDumpStore(directory);
+		} catch (IOException e) {
+			logger.warn("Dump store {} not available: {}", directory, e.toString());
+			return null;
+		}
+	}
+
+	public String get(TinyAsmDumpCache.Key key) {
+		dataLock.readLock().lock();
+		try {
+			long offset;
+			int length;
+			synchronized (this) {
+				int slot = find(slots, capacity, key.hash);
+				if (slot < 0) return null;
+				int position = HEADER_SIZE + slot * SLOT_SIZE;
+				offset = slots.getLong(position + KEY_SIZE) - 1;
+				length = slots.getInt(position + KEY_SIZE + 8);
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(length);
+			read(buffer, offset);
+			return new String(buffer.array(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			dataLock.readLock().unlock();
+		}
+	}
+
+	public void put(TinyAsmDumpCache.Key key, String code) {
+		byte[] bytes = code.getBytes(StandardCharsets.UTF_8);
+		dataLock.readLock().lock();
+		try {
+			long offset = end.getAndAdd(bytes.length);
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while (buffer.hasRemaining()) {
+				data.write(buffer, offset + buffer.position());
+			}
+
+			synchronized (this) {
+				int slot = find(slots, capacity, key.hash);
+				if (slot < 0) {
+					if ((count + 1) * 10L > capacity * 7L) {
+						grow();
+						slot = find(slots, capacity, key.hash);
+					}
+					slot = -slot - 1;
+					count++;
+					slots.putInt(12, count);
+				} else {
+					live -= slots.getInt(HEADER_SIZE + slot * SLOT_SIZE + KEY_SIZE + 8);
+				}
+				live += bytes.length;
+				writeSlot(slots, slot, key.hash, offset, bytes.length);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			dataLock.readLock().unlock();
+		}
+	}
+
+	public synchronized int size() {
+		return count;
+	}
+
+	/** Bytes of the data file, including sources replaced since the last {@link #compact()}. */
+	public long dataSize() {
+		return end.get();
+	}
+
+	/**
+	 * Moves the sources still in the index to the front of the data file and
+	 * truncates it, dropping replaced sources and sources written while the
+	 * index was not. Done on open when less than half of the data file is live.
+	 * The index is marked invalid while sources move, so a store interrupted
+	 * here is started anew.
+	 */
+	public void compact() throws IOException {
+		dataLock.writeLock().lock();
+		try {
+			synchronized (this) {
+				List<long[]> entries = new ArrayList<>();
+				for (int slot = 0; slot < capacity; slot++) {
+					int position = HEADER_SIZE + slot * SLOT_SIZE;
+					long offset = slots.getLong(position + KEY_SIZE);
+					if (offset != 0) {
+						entries.add(new long[] { offset - 1, slots.getInt(position + KEY_SIZE + 8), slot });
+					}
+				}
+				entries.sort((e1, e2) -> Long.compare(e1[0], e2[0]));
+
+				slots.putInt(4, 0);
+				slots.force();
+				long newEnd = 0;
+				ByteBuffer buffer = ByteBuffer.allocate(8192);
+				for (long[] entry : entries) {
+					long offset = entry[0];
+					int length = (int) entry[1];
+					if (offset != newEnd) {
+						for (int moved = 0; moved < length; moved += buffer.capacity()) {
+							buffer.clear().limit(Math.min(buffer.capacity(), length - moved));
+							read(buffer, offset + moved);
+							buffer.flip();
+							while (buffer.hasRemaining()) {
+								data.write(buffer, newEnd + moved + buffer.position());
+							}
+						}
+						slots.putLong(HEADER_SIZE + (int) entry[2] * SLOT_SIZE + KEY_SIZE, newEnd + 1);
+					}
+					newEnd += length;
+				}
+				data.truncate(newEnd);
+				data.force(false);
+				slots.putInt(4, VERSION);
+				slots.force();
+				logger.debug("Compacted dump store {} from {} to {} bytes", indexFile.getParent(), end.get(), newEnd);
+				end.set(newEnd);
+				live = newEnd;
+			}
+		} finally {
+			dataLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		dataLock.writeLock().lock();
+		try {
+			synchronized (this) {
+				slots.force();
+				data.force(false);
+				lock.release();
+				data.close();
+			}
+		} finally {
+			dataLock.writeLock().unlock();
+		}
+	}
+
+	private void read(ByteBuffer buffer, long offset) throws IOException {
+		int start = buffer.position();
+		while (buffer.hasRemaining()) {
+			if (data.read(buffer, offset + buffer.position() - start) < 0) {
+				throw new IOException("Unexpected end of dump store");
+			}
+		}
+	}
+
+	private boolean sameGenerator() {
+		for (int i = 0; i < KEY_SIZE; i++) {
+			if (slots.get(16 + i) != generator[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Starts an empty index in the existing file. The file is neither truncated
+	 * nor replaced, as an older mapping of it may still be open, and bytes past
+	 * the slots are ignored.
+	 */
+	private void reset() throws IOException {
+		data.truncate(0);
+		slots = mapIndex(INITIAL_CAPACITY);
+		clearSlots(slots, INITIAL_CAPACITY);
+		slots.putInt(0, MAGIC);
+		slots.putInt(4, VERSION);
+		slots.putInt(8, INITIAL_CAPACITY);
+		slots.putInt(12, 0);
+		for (int i = 0; i < KEY_SIZE; i++) {
+			slots.put(16 + i, generator[i]);
+		}
+		slots.force();
+		capacity = INITIAL_CAPACITY;
+		count = 0;
+	}
+
+	/**
+	 * Doubles the index in place: extends the file, maps it again and rehashes
+	 * the slots. The index is marked invalid meanwhile, like in {@link #compact()}.
+	 */
+	private void grow() throws IOException {
+		int newCapacity = capacity * 2;
+		List<byte[]> hashes = new ArrayList<>();
+		List<long[]> entries = new ArrayList<>();
+		for (int slot = 0; slot < capacity; slot++) {
+			int position = HEADER_SIZE + slot * SLOT_SIZE;
+			long offset = slots.getLong(position + KEY_SIZE);
+			if (offset == 0) continue;
+			byte[] hash = new byte[KEY_SIZE];
+			for (int i = 0; i < KEY_SIZE; i++) {
+				hash[i] = slots.get(position + i);
+			}
+			hashes.add(hash);
+			entries.add(new long[] { offset - 1, slots.getInt(position + KEY_SIZE + 8) });
+		}
+
+		slots.putInt(4, 0);
+		slots.force();
+		slots = mapIndex(newCapacity);
+		clearSlots(slots, newCapacity);
+		for (int i = 0; i < hashes.size(); i++) {
+			byte[] hash = hashes.get(i);
+			writeSlot(slots, -find(slots, newCapacity, hash) - 1, hash, entries.get(i)[0], (int) entries.get(i)[1]);
+		}
+		slots.putInt(8, newCapacity);
+		slots.putInt(12, count);
+		slots.putInt(4, VERSION);
+		slots.force();
+		capacity = newCapacity;
+	}
+
+	private MappedByteBuffer mapIndex(int capacity) throws IOException {
+		try (FileChannel index = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			return index.map(MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+		}
+	}
+
+	private static void clearSlots(MappedByteBuffer slots, int capacity) {
+		for (int position = HEADER_SIZE; position < HEADER_SIZE + capacity * SLOT_SIZE; position += 8) {
+			slots.putLong(position, 0);
+		}
+	}
+
+	/**
+	 * Returns the slot holding hash, or {@code -slot - 1} of the empty slot where
+	 * it belongs. capacity is a power of two.
+	 */
+	private static int find(MappedByteBuffer slots, int capacity, byte[] hash) {
+		int mask = capacity - 1;
+		int slot = ((hash[0] & 0xFF) << 24 | (hash[1] & 0xFF) << 16 | (hash[2] & 0xFF) << 8 | (hash[3] & 0xFF)) & mask;
+		while (true) {
+			int position = HEADER_SIZE + slot * SLOT_SIZE;
+			if (slots.getLong(position + KEY_SIZE) == 0) {
+				return -slot - 1;
+			}
+			boolean same = true;
+			for (int i = 0; i < KEY_SIZE; i++) {
+				if (slots.get(position + i) != hash[i]) {
+					same = false;
+					break;
+				}
+			}
+			if (same) return slot;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private static void writeSlot(MappedByteBuffer slots, int slot, byte[] hash, long offset, int length) {
+		int position = HEADER_SIZE + slot * SLOT_SIZE;
+		for (int i = 0; i < KEY_SIZE; i++) {
+			slots.put(position + i, hash[i]);
+		}
+		slots.putInt(position + KEY_SIZE + 8, length);
+		slots.putLong(position + KEY_SIZE, offset + 1);
+	}
+}
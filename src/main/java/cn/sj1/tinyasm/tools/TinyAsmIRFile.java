@@ -0,0 +1,570 @@
+package cn.sj1.tinyasm.tools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Keeps many classes, read into ClassNodes, in one file, read back through a
+ * memory mapped buffer, so a corpus is loaded without reading class files
+ * again. A class is written as the visits of its ClassNode, see
+ * {@link ClassEvents}.
+ * Every number is a zigzag varint, so opcodes and small operands take a byte.
+ * Strings are kept once per file and referred to by index + 1, 0 being
+ * {@literal null}; labels and locals stay the numbers of the events.
+ *
+ * <pre>
+ * file     = magic:int version:int classCount:int stringCount:int
+ *            string[stringCount] entry[classCount] class[classCount]
+ * string   = length utf8[length]
+ * entry    = name length                  length of the class in bytes
+ * class    = version access name signature superName interfaces
+ *            constantCount constant[constantCount]
+ *            fieldCount member[fieldCount] methodCount member[methodCount]
+ *            eventCount event[eventCount]
+ * member   = access name descriptor signature value:constant exceptions start labels
+ * </pre>
+ *
+ * Arrays of strings are written as count + 1, 0 being {@literal null}. The
+ * classes are decoded into a ClassNode when asked for. Attributes ClassReader does not know
+ * cannot be written.
+ */
+public class TinyAsmIRFile implements Closeable {
+
+	private static final int MAGIC = 0x54414952;
+	private static final int VERSION = 1;
+
+	static final int NULL = 0;
+	static final int STRING = 1;
+	static final int INTEGER = 2;
+	static final int BYTE = 3;
+	static final int CHARACTER = 4;
+	static final int SHORT = 5;
+	static final int BOOLEAN = 6;
+	static final int LONG = 7;
+	static final int FLOAT = 8;
+	static final int DOUBLE = 9;
+	static final int TYPE = 10;
+	static final int HANDLE = 11;
+	static final int CONSTANT_DYNAMIC = 12;
+	static final int TYPE_PATH = 13;
+	static final int BYTE_ARRAY = 14;
+	static final int BOOLEAN_ARRAY = 15;
+	static final int CHAR_ARRAY = 16;
+	static final int SHORT_ARRAY = 17;
+	static final int INT_ARRAY = 18;
+	static final int LONG_ARRAY = 19;
+	static final int FLOAT_ARRAY = 20;
+	static final int DOUBLE_ARRAY = 21;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final String[] strings;
+	private final Map<String, Integer> index = new LinkedHashMap<>();
+	private final int[] offsets;
+
+	public TinyAsmIRFile(File file) throws IOException {
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			this.buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			Input in = new Input(buffer.duplicate());
+			if (in.buffer.remaining() < 16 || in.buffer.getInt() != MAGIC || in.buffer.getInt() != VERSION) {
+				throw new IOException(file + " is not a TinyAsm IR file");
+			}
+			int classCount = in.buffer.getInt();
+			strings = new String[in.buffer.getInt()];
+			for (int i = 0; i < strings.length; i++) {
+				byte[] bytes = new byte[in.readInt()];
+				in.buffer.get(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+			String[] names = new String[classCount];
+			int[] lengths = new int[classCount];
+			for (int i = 0; i < classCount; i++) {
+				names[i] = in.readString(strings);
+				lengths[i] = in.readInt();
+			}
+			offsets = new int[classCount];
+			int offset = in.buffer.position();
+			for (int i = 0; i < classCount; i++) {
+				offsets[i] = offset;
+				offset += lengths[i];
+				index.put(names[i], i);
+			}
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** The internal names of the classes, in the order they were written. */
+	public List<String> getNames() {
+		return Collections.unmodifiableList(new ArrayList<>(index.keySet()));
+	}
+
+	public int size() {
+		return offsets.length;
+	}
+
+	/** Decodes the class named className, with dots or slashes, or returns {@literal null}. */
+	public ClassNode get(String className) {
+		Integer i = index.get(className.replace('.', '/'));
+		return i == null ? null : get(i);
+	}
+
+	public ClassNode get(int i) {
+		ByteBuffer view = buffer.duplicate();
+		view.position(offsets[i]);
+		return readClass(new Input(view), strings).toClassNode();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	// -----------------------------------------------------------------------------------------------
+	// Writing
+	// -----------------------------------------------------------------------------------------------
+
+	/** Writes classes to file, replacing it once all is written. */
+	public static void write(File file, Collection<ClassNode> classes) {
+		StringTable strings = new StringTable();
+		List<Output> encoded = new ArrayList<>(classes.size());
+		for (ClassNode classNode : classes) {
+			Output out = new Output();
+			writeClass(out, strings, ClassEvents.record(classNode));
+			encoded.add(out);
+		}
+
+		File tmpFile = new File(file.getPath() + ".tmp");
+		try (OutputStream os = new FileOutputStream(tmpFile)) {
+			Output head = new Output();
+			head.writeFixed(MAGIC);
+			head.writeFixed(VERSION);
+			head.writeFixed(classes.size());
+			head.writeFixed(strings.list.size());
+			for (String string : strings.list) {
+				byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+				head.writeInt(bytes.length);
+				head.write(bytes, 0, bytes.length);
+			}
+			int i = 0;
+			for (ClassNode classNode : classes) {
+				head.writeInt(strings.ref(classNode.name));
+				head.writeInt(encoded.get(i++).size);
+			}
+			os.write(head.bytes, 0, head.size);
+			for (Output out : encoded) {
+				os.write(out.bytes, 0, out.size);
+			}
+		} catch (IOException e) {
+			tmpFile.delete();
+			throw new RuntimeException(e);
+		}
+		try {
+			Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static void writeClass(Output out, StringTable strings, ClassEvents ir) {
+		out.writeInt(ir.version);
+		out.writeInt(ir.access);
+		out.writeInt(strings.ref(ir.name));
+		out.writeInt(strings.ref(ir.signature));
+		out.writeInt(strings.ref(ir.superName));
+		writeStrings(out, strings, ir.interfaces);
+
+		out.writeInt(ir.constants.length);
+		for (Object constant : ir.constants) {
+			writeConstant(out, strings, constant);
+		}
+		for (List<ClassEvents.Member> members : Arrays.asList(ir.fields, ir.methods)) {
+			out.writeInt(members.size());
+			for (ClassEvents.Member member : members) {
+				out.writeInt(member.access);
+				out.writeInt(strings.ref(member.name));
+				out.writeInt(strings.ref(member.descriptor));
+				out.writeInt(strings.ref(member.signature));
+				writeConstant(out, strings, member.value);
+				writeStrings(out, strings, member.exceptions);
+				out.writeInt(member.start);
+				out.writeInt(member.labels);
+			}
+		}
+		out.writeInt(ir.events.length);
+		for (int event : ir.events) {
+			out.writeInt(event);
+		}
+	}
+
+	private static void writeStrings(Output out, StringTable strings, String[] values) {
+		if (values == null) {
+			out.writeInt(0);
+			return;
+		}
+		out.writeInt(values.length + 1);
+		for (String value : values) {
+			out.writeInt(strings.ref(value));
+		}
+	}
+
+	static void writeConstant(Output out, StringTable strings, Object value) {
+		if (value == null) {
+			out.writeInt(NULL);
+		} else if (value instanceof String) {
+			out.writeInt(STRING);
+			out.writeInt(strings.ref((String) value));
+		} else if (value instanceof Integer) {
+			out.writeInt(INTEGER);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Byte) {
+			out.writeInt(BYTE);
+			out.writeInt((Byte) value);
+		} else if (value instanceof Character) {
+			out.writeInt(CHARACTER);
+			out.writeInt((Character) value);
+		} else if (value instanceof Short) {
+			out.writeInt(SHORT);
+			out.writeInt((Short) value);
+		} else if (value instanceof Boolean) {
+			out.writeInt(BOOLEAN);
+			out.writeInt((Boolean) value ? 1 : 0);
+		} else if (value instanceof Long) {
+			out.writeInt(LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Float) {
+			out.writeInt(FLOAT);
+			out.writeInt(Float.floatToRawIntBits((Float) value));
+		} else if (value instanceof Double) {
+			out.writeInt(DOUBLE);
+			out.writeLong(Double.doubleToRawLongBits((Double) value));
+		} else if (value instanceof Type) {
+			out.writeInt(TYPE);
+			out.writeInt(strings.ref(((Type) value).getDescriptor()));
+		} else if (value instanceof Handle) {
+			Handle handle = (Handle) value;
+			out.writeInt(HANDLE);
+			out.writeInt(handle.getTag());
+			out.writeInt(strings.ref(handle.getOwner()));
+			out.writeInt(strings.ref(handle.getName()));
+			out.writeInt(strings.ref(handle.getDesc()));
+			out.writeInt(handle.isInterface() ? 1 : 0);
+		} else if (value instanceof ConstantDynamic) {
+			ConstantDynamic constant = (ConstantDynamic) value;
+			out.writeInt(CONSTANT_DYNAMIC);
+			out.writeInt(strings.ref(constant.getName()));
+			out.writeInt(strings.ref(constant.getDescriptor()));
+			writeConstant(out, strings, constant.getBootstrapMethod());
+			out.writeInt(constant.getBootstrapMethodArgumentCount());
+			for (int i = 0; i < constant.getBootstrapMethodArgumentCount(); i++) {
+				writeConstant(out, strings, constant.getBootstrapMethodArgument(i));
+			}
+		} else if (value instanceof TypePath) {
+			out.writeInt(TYPE_PATH);
+			out.writeInt(strings.ref(value.toString()));
+		} else if (value instanceof byte[]) {
+			byte[] array = (byte[]) value;
+			out.writeInt(BYTE_ARRAY);
+			out.writeInt(array.length);
+			for (byte element : array) out.writeInt(element);
+		} else if (value instanceof boolean[]) {
+			boolean[] array = (boolean[]) value;
+			out.writeInt(BOOLEAN_ARRAY);
+			out.writeInt(array.length);
+			for (boolean element : array) out.writeInt(element ? 1 : 0);
+		} else if (value instanceof char[]) {
+			char[] array = (char[]) value;
+			out.writeInt(CHAR_ARRAY);
+			out.writeInt(array.length);
+			for (char element : array) out.writeInt(element);
+		} else if (value instanceof short[]) {
+			short[] array = (short[]) value;
+			out.writeInt(SHORT_ARRAY);
+			out.writeInt(array.length);
+			for (short element : array) out.writeInt(element);
+		} else if (value instanceof int[]) {
+			int[] array = (int[]) value;
+			out.writeInt(INT_ARRAY);
+			out.writeInt(array.length);
+			for (int element : array) out.writeInt(element);
+		} else if (value instanceof long[]) {
+			long[] array = (long[]) value;
+			out.writeInt(LONG_ARRAY);
+			out.writeInt(array.length);
+			for (long element : array) out.writeLong(element);
+		} else if (value instanceof float[]) {
+			float[] array = (float[]) value;
+			out.writeInt(FLOAT_ARRAY);
+			out.writeInt(array.length);
+			for (float element : array) out.writeInt(Float.floatToRawIntBits(element));
+		} else if (value instanceof double[]) {
+			double[] array = (double[]) value;
+			out.writeInt(DOUBLE_ARRAY);
+			out.writeInt(array.length);
+			for (double element : array) out.writeLong(Double.doubleToRawLongBits(element));
+		} else {
+			throw new IllegalArgumentException("Cannot write " + value.getClass().getName() + " " + value);
+		}
+	}
+
+	// -----------------------------------------------------------------------------------------------
+	// Reading
+	// -----------------------------------------------------------------------------------------------
+
+	static ClassEvents readClass(Input in, String[] strings) {
+		int version = in.readInt();
+		int access = in.readInt();
+		String name = in.readString(strings);
+		String signature = in.readString(strings);
+		String superName = in.readString(strings);
+		String[] interfaces = readStrings(in, strings);
+
+		Object[] constants = new Object[in.readInt()];
+		for (int i = 0; i < constants.length; i++) {
+			constants[i] = readConstant(in, strings);
+		}
+		List<ClassEvents.Member> fields = readMembers(in, strings);
+		List<ClassEvents.Member> methods = readMembers(in, strings);
+		int[] events = new int[in.readInt()];
+		for (int i = 0; i < events.length; i++) {
+			events[i] = in.readInt();
+		}
+		return new ClassEvents(version, access, name, signature, superName, interfaces, events, constants, fields, methods);
+	}
+
+	private static List<ClassEvents.Member> readMembers(Input in, String[] strings) {
+		int count = in.readInt();
+		List<ClassEvents.Member> members = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			int access = in.readInt();
+			String name = in.readString(strings);
+			String descriptor = in.readString(strings);
+			String signature = in.readString(strings);
+			Object value = readConstant(in, strings);
+			String[] exceptions = readStrings(in, strings);
+			ClassEvents.Member member = new ClassEvents.Member(access, name, descriptor, signature, value, exceptions, in.readInt());
+			member.labels = in.readInt();
+			members.add(member);
+		}
+		return members;
+	}
+
+	private static String[] readStrings(Input in, String[] strings) {
+		int count = in.readInt();
+		if (count == 0) return null;
+		String[] values = new String[count - 1];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = in.readString(strings);
+		}
+		return values;
+	}
+
+	static Object readConstant(Input in, String[] strings) {
+		int tag = in.readInt();
+		switch (tag) {
+		case NULL:
+			return null;
+		case STRING:
+			return in.readString(strings);
+		case INTEGER:
+			return in.readInt();
+		case BYTE:
+			return (byte) in.readInt();
+		case CHARACTER:
+			return (char) in.readInt();
+		case SHORT:
+			return (short) in.readInt();
+		case BOOLEAN:
+			return in.readInt() != 0;
+		case LONG:
+			return in.readLong();
+		case FLOAT:
+			return Float.intBitsToFloat(in.readInt());
+		case DOUBLE:
+			return Double.longBitsToDouble(in.readLong());
+		case TYPE:
+			return Type.getType(in.readString(strings));
+		case HANDLE:
+			return new Handle(in.readInt(), in.readString(strings), in.readString(strings), in.readString(strings), in.readInt() != 0);
+		case CONSTANT_DYNAMIC: {
+			String name = in.readString(strings);
+			String descriptor = in.readString(strings);
+			Handle bootstrapMethod = (Handle) readConstant(in, strings);
+			Object[] arguments = new Object[in.readInt()];
+			for (int i = 0; i < arguments.length; i++) {
+				arguments[i] = readConstant(in, strings);
+			}
+			return new ConstantDynamic(name, descriptor, bootstrapMethod, arguments);
+		}
+		case TYPE_PATH:
+			return TypePath.fromString(in.readString(strings));
+		case BYTE_ARRAY: {
+			byte[] array = new byte[in.readInt()];
+			for (int i = 0; i < array.length; i++) array[i] = (byte) in.readInt();
+			return array;
+		}
+		case BOOLEAN_ARRAY: {
+			boolean[] array = new boolean[in.readInt()];
+			for (int i = 0; i < array.length; i++) array[i] = in.readInt() != 0;
+			return array;
+		}
+		case CHAR_ARRAY: {
+			char[] array = new char[in.readInt()];
+			for (int i = 0; i < array.length; i++) array[i] = (char) in.readInt();
+			return array;
+		}
+		case SHORT_ARRAY: {
+			short[] array = new short[in.readInt()];
+			for (int i = 0; i < array.length; i++) array[i] = (short) in.readInt();
+			return array;
+		}
+		case INT_ARRAY: {
+			int[] array = new int[in.readInt()];
+			for (int i = 0; i < array.length; i++) array[i] = in.readInt();
+			return array;
+		}
+		case LONG_ARRAY: {
+			long[] array = new long[in.readInt()];
+			for (int i = 0; i < array.length; i++) array[i] = in.readLong();
+			return array;
+		}
+		case FLOAT_ARRAY: {
+			float[] array = new float[in.readInt()];
+			for (int i = 0; i < array.length; i++) array[i] = Float.intBitsToFloat(in.readInt());
+			return array;
+		}
+		case DOUBLE_ARRAY: {
+			double[] array = new double[in.readInt()];
+			for (int i = 0; i < array.length; i++) array[i] = Double.longBitsToDouble(in.readLong());
+			return array;
+		}
+		default:
+			throw new IllegalStateException("Unexpected constant tag " + tag);
+		}
+	}
+
+	/** Strings of a file, in the order they are first written. */
+	static class StringTable {
+		final List<String> list = new ArrayList<>();
+		final Map<String, Integer> refs = new HashMap<>();
+
+		int ref(String string) {
+			if (string == null) return 0;
+			Integer ref = refs.get(string);
+			if (ref == null) {
+				list.add(string);
+				ref = list.size();
+				refs.put(string, ref);
+			}
+			return ref;
+		}
+	}
+
+	static class Output {
+		byte[] bytes = new byte[4096];
+		int size;
+
+		private void ensure(int n) {
+			if (size + n > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + n));
+		}
+
+		void write(byte[] b, int off, int len) {
+			ensure(len);
+			System.arraycopy(b, off, bytes, size, len);
+			size += len;
+		}
+
+		void writeFixed(int value) {
+			ensure(4);
+			bytes[size++] = (byte) (value >>> 24);
+			bytes[size++] = (byte) (value >>> 16);
+			bytes[size++] = (byte) (value >>> 8);
+			bytes[size++] = (byte) value;
+		}
+
+		/** Zigzag varint. */
+		void writeInt(int value) {
+			ensure(5);
+			int v = (value << 1) ^ (value >> 31);
+			while ((v & ~0x7F) != 0) {
+				bytes[size++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			bytes[size++] = (byte) v;
+		}
+
+		void writeLong(long value) {
+			ensure(10);
+			long v = (value << 1) ^ (value >> 63);
+			while ((v & ~0x7FL) != 0) {
+				bytes[size++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			bytes[size++] = (byte) v;
+		}
+	}
+
+	static class Input {
+		final ByteBuffer buffer;
+
+		Input(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		int readInt() {
+			int v = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get();
+				v |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		long readLong() {
+			long v = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get();
+				v |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		String readString(String[] strings) {
+			int ref = readInt();
+			return ref == 0 ? null : strings[ref - 1];
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package cn.sj1.tinyasm.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+
+/**
+ * Compiles generated sources without touching the file system: sources are
+ * read from Strings, class files are kept in a map and defined straight from
+ * those bytes. Each call borrows its own file manager from
+ * {@link TinyAsmCompilerPool} and defines its classes in its own
+ * {@link TinyAsmClassLoaders.Generation}, so round trips may run concurrently.
+ */
+public class TinyAsmMemoryCompiler {
+
+	/**
+	 * Compiles source of className and returns the bytes of every class it
+	 * declares, inner classes included, by binary name.
+	 */
+	public static Map<String, byte[]> compile(String className, String source) {
+		return compile(Collections.singletonMap(className, source));
+	}
+
+	/**
+	 * Compiles all sources, keyed by class name, in one compilation task, so the
+	 * compiler starts and loads the class path only once.
+	 */
+	public static Map<String, byte[]> compile(Map<String, String> sources) {
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		try (TinyAsmCompilerPool.Lease lease = TinyAsmCompilerPool.getDefault().borrow()) {
+			JavaCompiler compiler = lease.getCompiler();
+			MemoryFileManager fileManager = new MemoryFileManager(lease.getFileManager());
+			List<JavaFileObject> units = new ArrayList<>();
+			for (Map.Entry<String, String> source : sources.entrySet()) {
+				units.add(new SourceFile(source.getKey(), source.getValue()));
+			}
+			List<String> optionList = Arrays.asList("-proc:none");
+
+			JavaCompiler.CompilationTask t = compiler.getTask(null, fileManager, diagnostics, optionList, null, units);
+			if (!t.call()) {
+				throw new RuntimeException("Compile " + sources.keySet() + " failed: " + format(diagnostics));
+			}
+			return fileManager.getClasses();
+		}
+	}
+
+	/**
+	 * Compiles the generated dump sources, keyed by the name of the class they
+	 * dump, in one task and loads them in a new class loader generation.
+	 *
+	 * @return a handle per dumped class name, in the order of sources.
+	 */
+	public static Map<String, TinyAsmDumpHandle> compileDumps(Map<String, String> sources) {
+		return compileDumps(sources, TinyAsmClassLoaders.getDefault().newGeneration());
+	}
+
+	/**
+	 * Same as {@link #compileDumps(Map)}, but loads the dumps in generation, so
+	 * they can be dropped together with the other classes of the generation.
+	 */
+	public static Map<String, TinyAsmDumpHandle> compileDumps(Map<String, String> sources, TinyAsmClassLoaders.Generation generation) {
+		Map<String, String> dumpSources = new LinkedHashMap<>();
+		for (Map.Entry<String, String> source : sources.entrySet()) {
+			dumpSources.put(source.getKey() + "TinyAsmDump", source.getValue());
+		}
+		generation.addClasses(compile(dumpSources));
+
+		Map<String, TinyAsmDumpHandle> handles = new LinkedHashMap<>();
+		for (String className : sources.keySet()) {
+			handles.put(className, new TinyAsmDumpHandle(className, loadClass(className + "TinyAsmDump", generation)));
+		}
+		return handles;
+	}
+
+	public static Class<?> compileAndLoad(String className, String source) {
+		return compileAndLoad(className, source, TinyAsmClassLoaders.getDefault().newGeneration());
+	}
+
+	public static Class<?> compileAndLoad(String className, String source, TinyAsmClassLoaders.Generation generation) {
+		generation.addClasses(compile(className, source));
+		return loadClass(className, generation);
+	}
+
+	public static Class<?> loadClass(String className, Map<String, byte[]> classes) {
+		return loadClass(className, TinyAsmClassLoaders.getDefault().newGeneration().addClasses(classes));
+	}
+
+	static Class<?> loadClass(String className, ClassLoader classLoader) {
+		try {
+			return classLoader.loadClass(className);
+		} catch (ClassNotFoundException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static String format(DiagnosticCollector<JavaFileObject> diagnostics) {
+		StringBuilder sb = new StringBuilder();
+		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+			if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+				sb.append("\n").append(diagnostic.getSource() != null ? diagnostic.getSource().getName() : "").append(":").append(diagnostic.getLineNumber()).append(": ");
+				sb.append(diagnostic.getMessage(null));
+			}
+		}
+		return sb.toString();
+	}
+
+	static class SourceFile extends SimpleJavaFileObject {
+		final String source;
+
+		SourceFile(String className, String source) {
+			super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+			this.source = source;
+		}
+
+		@Override
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+			return source;
+		}
+	}
+
+	static class ClassFile extends SimpleJavaFileObject {
+		final String className;
+		final Map<String, byte[]> classes;
+
+		ClassFile(String className, Map<String, byte[]> classes) {
+			super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+			this.className = className;
+			this.classes = classes;
+		}
+
+		@Override
+		public OutputStream openOutputStream() {
+			return new ByteArrayOutputStream() {
+				@Override
+				public void close() throws IOException {
+					super.close();
+					classes.put(className, toByteArray());
+				}
+			};
+		}
+	}
+
+	/**
+	 * Keeps class output in memory, everything else goes to the standard manager,
+	 * which belongs to a {@link TinyAsmCompilerPool} and is never closed here.
+	 */
+	static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+		final Map<String, byte[]> classes = new HashMap<>();
+
+		MemoryFileManager(StandardJavaFileManager fileManager) {
+			super(fileManager);
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location, String className, Kind kind, FileObject sibling) throws IOException {
+			if (kind == Kind.CLASS) {
+				return new ClassFile(className, classes);
+			}
+			return super.getJavaFileForOutput(location, className, kind, sibling);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+
+		Map<String, byte[]> getClasses() {
+			return classes;
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package cn.sj1.tinyasm.tools;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.objectweb.asm.ClassReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks the generated dumps rebuild the classes they were generated from: for
+ * every class of a jar or class directory runs {@link TinyASMifier}, compiles
+ * the dump in memory, runs it and compares the rebuilt class with the original
+ * through {@link ClassNodeDiff}, as far as ClassNodeDiff compares classes.
+ * Classes are verified in parallel on a {@link ForkJoinPool}, nothing is
+ * written to disk.
+ *
+ * Classes that differ and classes that could not be verified are reported
+ * apart, see {@link Report}.
+ */
+public class TinyAsmRoundTripVerifier {
+	static Logger logger = LoggerFactory.getLogger(TinyAsmRoundTripVerifier.class);
+
+	/** Entries per task below which a task stops splitting. */
+	private static final int THRESHOLD = 8;
+
+	private final ForkJoinPool pool;
+
+	public TinyAsmRoundTripVerifier() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public TinyAsmRoundTripVerifier(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/** Verifies every class of a jar file or a class directory. */
+	public Report verify(File source) {
+		return TinyAsmBatchDumper.readClasses(source, this::verify);
+	}
+
+	public Report verify(List<String> entries, TinyAsmBatchDumper.ClassSource source) {
+		Report report = new Report();
+		long start = System.nanoTime();
+		pool.invoke(new VerifyTask(entries, 0, entries.size(), source, report));
+		report.elapsedNanos = System.nanoTime() - start;
+		logger.info("{}", report);
+		return report;
+	}
+
+	/** Generates the dump of code, compiles it and returns the class it builds. */
+	protected byte[] regenerate(byte[] code) {
+		String className = new ClassReader(code).getClassName().replace('/', '.');
+		Class<?> dumpClass = TinyAsmMemoryCompiler.compileAndLoad(className + "TinyAsmDump", TinyAsmTestUtils.tinyasmToString(code));
+		return TinyAsmTestUtils.invokeDump(dumpClass);
+	}
+
+	class VerifyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final List<String> entries;
+		final int from;
+		final int to;
+		final TinyAsmBatchDumper.ClassSource source;
+		final Report report;
+
+		VerifyTask(List<String> entries, int from, int to, TinyAsmBatchDumper.ClassSource source, Report report) {
+			this.entries = entries;
+			this.from = from;
+			this.to = to;
+			this.source = source;
+			this.report = report;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new VerifyTask(entries, from, middle, source, report), new VerifyTask(entries, middle, to, source, report));
+				return;
+			}
+			for (int i = from; i < to; i++) {
+				String entry = entries.get(i);
+				try {
+					byte[] code = source.read(entry);
+					ClassNodeDiff.Result result = ClassNodeDiff.compare(code, regenerate(code));
+					report.classes.incrementAndGet();
+					if (!result.isSame()) {
+						String className = new ClassReader(code).getClassName().replace('/', '.');
+						logger.warn("{} differs: {}", className, result.getDifferences().get(0));
+						report.differences.put(className, result.getDifferences());
+					}
+				} catch (Exception e) {
+					logger.warn("verify {} failed: {}", entry, e.toString());
+					report.errors.put(entry, e.toString());
+				}
+			}
+		}
+	}
+
+	public static class Report {
+		final AtomicInteger classes = new AtomicInteger();
+		final Map<String, List<String>> differences = new ConcurrentSkipListMap<>();
+		final Map<String, String> errors = new ConcurrentSkipListMap<>();
+		long elapsedNanos;
+
+		/** Classes compared with their rebuilt class, the same or not. */
+		public int getClasses() {
+			return classes.get();
+		}
+
+		/** Differences of every class that did not survive the round trip, by class name. */
+		public Map<String, List<String>> getDifferences() {
+			return differences;
+		}
+
+		/** Why the entries that could not be verified failed, by entry. */
+		public Map<String, String> getErrors() {
+			return errors;
+		}
+
+		/** Whether every class was verified and is the same after the round trip. */
+		public boolean isSame() {
+			return differences.isEmpty() && errors.isEmpty();
+		}
+
+		public long getElapsedMillis() {
+			return elapsedNanos / 1000000;
+		}
+
+		public double getClassesPerSecond() {
+			return elapsedNanos > 0 ? classes.get() * 1000000000d / elapsedNanos : 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("verified %d classes (%d differ, %d failed) in %d ms, %.1f classes/sec", classes.get(), differences.size(), errors.size(), getElapsedMillis(),
+					getClassesPerSecond());
+		}
+	}
+
+	/**
+	 * Usage: TinyAsmRoundTripVerifier &lt;jar or class directory&gt;
+	 * [parallelism]
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: TinyAsmRoundTripVerifier <jar or class directory> [parallelism]");
+			return;
+		}
+		ForkJoinPool pool = args.length > 1 ? new ForkJoinPool(Integer.parseInt(args[1])) : ForkJoinPool.commonPool();
+		Report report = new TinyAsmRoundTripVerifier(pool).verify(new File(args[0]));
+		for (Map.Entry<String, List<String>> entry : report.getDifferences().entrySet()) {
+			System.out.println(entry.getKey());
+			for (String diff : entry.getValue()) {
+				System.out.println("\t" + diff);
+			}
+		}
+		for (Map.Entry<String, String> entry : report.getErrors().entrySet()) {
+			System.out.println(entry.getKey() + " failed: " + entry.getValue());
+		}
+		System.out.println(report);
+	}
+}
@@ -1,34 +1,85 @@
 package cn.sj1.tinyasm.tools;
 
-import static cn.sj1.tinyasm.tools.RefineCode.excludeLineNumber;
 import static cn.sj1.tinyasm.tools.RefineCode.skipToString;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+import javax.tools.DiagnosticCollector;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
-import javax.tools.ToolProvider;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.util.ASMifier;
 import org.objectweb.asm.util.TraceClassVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class TinyAsmTestUtils {
+	static Logger logger = LoggerFactory.getLogger(TinyAsmTestUtils.class);
+
 	private static String TARGET_DEFAULT = "src/test/java";
 
 	private static ThreadLocal<String> target = new ThreadLocal<String>();
 
+	/**
+	 * Sources are kept in memory only, unless the system property
+	 * {@code tinyasm.dumpStore} names a directory for a {@link TinyAsmDumpStore}.
+	 */
+	private static TinyAsmDumpCache dumpCache = newDumpCache(System.getProperty("tinyasm.dumpStore"));
+
+	static TinyAsmDumpCache newDumpCache(String storeDirectory) {
+		if (storeDirectory == null || storeDirectory.isEmpty()) {
+			return new TinyAsmDumpCache(1024);
+		}
+		TinyAsmDumpStore store = TinyAsmDumpStore.open(new File(storeDirectory));
+		if (store != null) {
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					store.close();
+				} catch (IOException e) {
+					logger.warn("Close dump store {} failed", storeDirectory, e);
+				}
+			}));
+		}
+		return new TinyAsmDumpCache(1024, store);
+	}
+
+	public static TinyAsmDumpCache getDumpCache() {
+		return dumpCache;
+	}
+
+	public static void setDumpCache(TinyAsmDumpCache cache) {
+		dumpCache = cache;
+	}
+
 	public static String getTarget() {
 		if (target == null || target.get() == null) {
 			target = new ThreadLocal<>();
@@ -53,7 +104,7 @@ public class TinyAsmTestUtils {
 	}
 
 	private static void ensurePathExist(File path) {
-		if (path.exists()) return;
+		if (path == null || path.exists()) return;
 		else {
 			ensurePathExist(path.getParentFile());
 			path.mkdir();
@@ -61,45 +112,12 @@ public class TinyAsmTestUtils {
 	}
 
 	public static String tinyasmToString(Class<?> clazz) {
-		try {
-			ClassReader cr = new ClassReader(clazz.getName());
-			StringWriter sw = new StringWriter();
-			PrintWriter pw = new PrintWriter(sw);
-			ClassVisitor visitor = new TraceClassVisitor(null, new TinyASMifier(), pw);
-			cr.accept(visitor, ClassReader.EXPAND_FRAMES);
-
-			String strCode = sw.toString();
-			writeCodeToFile(clazz, strCode);
-			return skipToString(excludeLineNumber(strCode));
-
-		} catch (Exception e) {
-			throw new RuntimeException(e);
-		}
+		return tinyasmToString(clazz, new ArrayList<>(), new ArrayList<>());
 	}
 
 	public static String tinyasmToString(Class<?> clazz, List<String> names, List<Object> classes) {
-		try {
-			ClassReader cr = new ClassReader(clazz.getName());
-			StringWriter sw = new StringWriter();
-			PrintWriter pw = new PrintWriter(sw);
-			ClassVisitor visitor = new TraceClassVisitor(null, new TinyASMifier(names, classes), pw);
-			cr.accept(visitor, ClassReader.EXPAND_FRAMES);
-
-			String strCode = sw.toString();
-			writeCodeToFile(clazz, strCode);
-			return skipToString(excludeLineNumber(strCode));
-
-		} catch (Exception e) {
-			throw new RuntimeException(e);
-		}
-	}
-
-	protected static void writeCodeToFile(Class<?> clazz, String strCode) {
-		writeCodeToFile(clazz.getName(), strCode);
-	}
-
-	protected static void writeCodeToFile(String className, String strCode) {
-		writeToFile(strCode, new File("tmp", System.currentTimeMillis() + className.replace('.', '_') + "_dump" + ".java"));
+		byte[] code = readClassBytes(clazz.getName());
+		return tinyasmToString(code, names, classes);
 	}
 
 	public static String toString(Class<?> clazz) {
@@ -107,12 +125,11 @@ public class TinyAsmTestUtils {
 			ClassReader cr = new ClassReader(clazz.getName());
 			StringWriter sw = new StringWriter();
 			PrintWriter pw = new PrintWriter(sw);
-			ClassVisitor visitor = new TraceClassVisitor(null, new ASMifier(), pw);
+			ClassVisitor visitor = new RefineClassVisitor(new TraceClassVisitor(null, new ASMifier(), pw), RefineClassVisitor.ASMIFIER);
 			cr.accept(visitor, ClassReader.EXPAND_FRAMES);
 
 			String strCode = sw.toString();
-			writeCodeToFile(clazz, strCode);
-			return skipToString(excludeLineNumber(strCode));
+			return skipToString(strCode);
 
 		} catch (Exception e) {
 			throw new RuntimeException(e);
@@ -124,29 +141,34 @@ public class TinyAsmTestUtils {
 			ClassReader cr = new ClassReader(code);
 			StringWriter sw = new StringWriter();
 			PrintWriter pw = new PrintWriter(sw);
-			ClassVisitor visitor = new TraceClassVisitor(null, new ASMifier(), pw);
+			ClassVisitor visitor = new RefineClassVisitor(new TraceClassVisitor(null, new ASMifier(), pw), RefineClassVisitor.ASMIFIER);
 			cr.accept(visitor, ClassReader.EXPAND_FRAMES);
 
 			String strCode = sw.toString();
-			writeCodeToFile(className, strCode);
-			return skipToString(excludeLineNumber(strCode));
+			return skipToString(strCode);
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	/** The same source as {@link #toString(String, byte[])}, from a class read once. */
+	public static String toString(ClassNode classNode) {
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		classNode.accept(new RefineClassVisitor(new TraceClassVisitor(null, new ASMifier(), pw), RefineClassVisitor.ASMIFIER));
+		return skipToString(sw.toString());
+	}
+
 	public static String toString(String className) {
 		try {
 			ClassReader cr = new ClassReader(className);
 			StringWriter sw = new StringWriter();
 			PrintWriter pw = new PrintWriter(sw);
-			ClassVisitor visitor = new TraceClassVisitor(null, new ASMifier(), pw);
+			ClassVisitor visitor = new RefineClassVisitor(new TraceClassVisitor(null, new ASMifier(), pw), RefineClassVisitor.ASMIFIER);
 			cr.accept(visitor, ClassReader.EXPAND_FRAMES);
 
 			String strCode = sw.toString();
-
-			writeCodeToFile(className, strCode);
-			return skipToString(excludeLineNumber(strCode));
+			return skipToString(strCode);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -167,18 +189,22 @@ public class TinyAsmTestUtils {
 	}
 
 	public static void complie2Class(File file) {
-		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-		StandardJavaFileManager fileMgr = compiler.getStandardFileManager(null, null, null);
-		Iterable<? extends JavaFileObject> units = fileMgr.getJavaFileObjects(file);
-		List<String> optionList = Arrays.asList("-d", "target/test-classes");
+		complie2Class(file, new File("target/test-classes"));
+	}
 
-		JavaCompiler.CompilationTask t = compiler.getTask(null, fileMgr, null, optionList, null, units);
-		t.call();
-		try {
-			fileMgr.close();
-		} catch (IOException e) {
-			e.printStackTrace();
-			throw new RuntimeException(e);
+	/** Compiles the source file into classes below outputDirectory, failing like {@link TinyAsmMemoryCompiler}. */
+	public static void complie2Class(File file, File outputDirectory) {
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		try (TinyAsmCompilerPool.Lease lease = TinyAsmCompilerPool.getDefault().borrow()) {
+			JavaCompiler compiler = lease.getCompiler();
+			StandardJavaFileManager fileMgr = lease.getFileManager();
+			Iterable<? extends JavaFileObject> units = fileMgr.getJavaFileObjects(file);
+			List<String> optionList = Arrays.asList("-d", outputDirectory.getPath());
+
+			JavaCompiler.CompilationTask t = compiler.getTask(null, fileMgr, diagnostics, optionList, null, units);
+			if (!t.call()) {
+				throw new RuntimeException("Compile " + file + " failed: " + TinyAsmMemoryCompiler.format(diagnostics));
+			}
 		}
 	}
 
@@ -236,8 +262,7 @@ public class TinyAsmTestUtils {
 
 			complie2Class(new File(getTarget(), dumpClazz.replace('.', '/') + ".java"));
 			Class<?> clazz = loadClass(new File(getTarget(), dumpClazz.replace('.', '/') + ".java"), dumpClazz);
-			byte[] code = (byte[]) clazz.getMethod("dump").invoke(null);
-			return code;
+			return invokeDump(clazz);
 		} catch (Exception e) {
 			e.printStackTrace();
 			throw new RuntimeException(e);
@@ -268,35 +293,218 @@ public class TinyAsmTestUtils {
 
 			complie2Class(new File(getTarget(), dumpClazz.replace('.', '/') + ".java"));
 			Class<?> clazz = loadClass(new File(getTarget(), dumpClazz.replace('.', '/') + ".java"), dumpClazz);
-			Object instance = clazz.getConstructor().newInstance();
+			return invokeBuild(clazz, expectClazzName, paramVales);
+		} catch (Exception e) {
+			e.printStackTrace();
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Same as {@link #dumpTinyAsm(Class)}, but the generated source is compiled
+	 * and loaded in memory, nothing is written to disk.
+	 */
+	public static byte[] dumpTinyAsmInMemory(Class<?> expectedClazz) {
+		String dumpClazz = expectedClazz.getName() + "TinyAsmDump";
+		Class<?> clazz = TinyAsmMemoryCompiler.compileAndLoad(dumpClazz, tinyasmToString(expectedClazz));
+		return invokeDump(clazz);
+	}
+
+	/**
+	 * Same as {@link #dumpTinyAsm(Class, List, List)}, but the generated source is
+	 * compiled and loaded in memory, nothing is written to disk.
+	 */
+	public static byte[] dumpTinyAsmInMemory(Class<?> expectedClazz, List<String> paramNames, List<Object> paramVales) {
+		String dumpClazz = expectedClazz.getName() + "TinyAsmDump";
+		Class<?> clazz = TinyAsmMemoryCompiler.compileAndLoad(dumpClazz, tinyasmToString(expectedClazz, paramNames, paramVales));
+		return invokeBuild(clazz, expectedClazz.getName(), paramVales);
+	}
+
+	/**
+	 * Generates the dumps of all expectedClazzes and compiles them in memory in a
+	 * single compilation task.
+	 */
+	public static List<TinyAsmDumpHandle> compileTinyAsmDumps(List<Class<?>> expectedClazzes) {
+		return compileTinyAsmDumps(expectedClazzes, TinyAsmClassLoaders.getDefault().newGeneration());
+	}
+
+	public static List<TinyAsmDumpHandle> compileTinyAsmDumps(List<Class<?>> expectedClazzes, TinyAsmClassLoaders.Generation generation) {
+		Map<String, String> sources = new LinkedHashMap<>();
+		for (Class<?> expectedClazz : expectedClazzes) {
+			sources.put(expectedClazz.getName(), tinyasmToString(expectedClazz));
+		}
+		return new ArrayList<>(TinyAsmMemoryCompiler.compileDumps(sources, generation).values());
+	}
+
+	static byte[] invokeDump(Class<?> dumpClazz) {
+		try {
+			return (byte[]) dumpClazz.getMethod("dump").invoke(null);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static byte[] invokeBuild(Class<?> dumpClazz, String className, List<Object> paramVales) {
+		try {
+			Object instance = dumpClazz.getConstructor().newInstance();
 
 			Object[] params = new Object[paramVales.size() + 1];
 			Class<?>[] paramClasses = new Class<?>[paramVales.size() + 1];
-			params[0] = expectClazzName;
+			params[0] = className;
 			paramClasses[0] = String.class;
 			for (int i = 0; i < paramVales.size(); i++) {
 				params[i + 1] = paramVales.get(i);
 				paramClasses[i + 1] = paramVales.get(i).getClass();
 			}
 
-			byte[] code = (byte[]) clazz.getMethod("build", paramClasses).invoke(instance, params);
-			return code;
+			return (byte[]) dumpClazz.getMethod("build", paramClasses).invoke(instance, params);
 		} catch (Exception e) {
-			e.printStackTrace();
 			throw new RuntimeException(e);
 		}
 	}
 
+	public static String tinyasmToString(byte[] code) {
+		return tinyasmToString(code, new ArrayList<>(), new ArrayList<>());
+	}
+
+	public static String tinyasmToString(byte[] code, List<String> names, List<Object> classes) {
+		return dumpCache.get(TinyAsmDumpCache.keyOf(code, names, classes), () -> skipToString(printTinyAsm(code, names, classes)));
+	}
+
 	public static String tinyasmToString(String clazz) {
+		return tinyasmToString(readClassBytes(clazz));
+	}
+
+	public static void tinyasmToWriter(byte[] code, Writer out) {
+		tinyasmToWriter(code, new ArrayList<>(), new ArrayList<>(), out);
+	}
+
+	/**
+	 * Writes the same source as {@link #tinyasmToString(byte[], List, List)} to
+	 * out, keeping at most one method in memory. Finished methods are spilled to a
+	 * temporary file until the class header with its imports is known.
+	 */
+	public static void tinyasmToWriter(byte[] code, List<String> names, List<Object> classes, Writer out) {
+		File spill = null;
 		try {
-			ClassReader cr = new ClassReader(clazz);
-			StringWriter sw = new StringWriter();
-			PrintWriter pw = new PrintWriter(sw);
-			ClassVisitor visitor = new TraceClassVisitor(null, new TinyASMifier(), pw);
-			cr.accept(visitor, ClassReader.EXPAND_FRAMES);
-			return skipToString(excludeLineNumber(sw.toString()));
-		} catch (Exception e) {
+			spill = File.createTempFile("tinyasm", ".java");
+			StringWriter header = new StringWriter();
+			try (Writer methods = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spill), StandardCharsets.UTF_8))) {
+				TinyASMifier printer = new TinyASMifier(names, classes).streamMethodsTo(methods);
+				ClassReader cr = new ClassReader(code);
+				cr.accept(new RefineClassVisitor(new TraceClassVisitor(null, printer, new PrintWriter(header)), RefineClassVisitor.TINYASMIFIER), ClassReader.EXPAND_FRAMES);
+			}
+			out.write(header.toString());
+			try (Reader methods = new InputStreamReader(new FileInputStream(spill), StandardCharsets.UTF_8)) {
+				char[] buffer = new char[8192];
+				int len;
+				while ((len = methods.read(buffer)) > 0) {
+					out.write(buffer, 0, len);
+				}
+			}
+			out.write("}\n");
+			out.flush();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			if (spill != null) spill.delete();
+		}
+	}
+
+	static String printTinyAsm(byte[] code, List<String> names, List<Object> classes) {
+		ClassReader cr = new ClassReader(code);
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		ClassVisitor visitor = new RefineClassVisitor(new TraceClassVisitor(null, new TinyASMifier(names, classes), pw), RefineClassVisitor.TINYASMIFIER);
+		cr.accept(visitor, ClassReader.EXPAND_FRAMES);
+		return sw.toString();
+	}
+
+	/** The same source as {@link #tinyasmToString(byte[], List, List)}, from a class read once. */
+	public static String tinyasmToString(ClassNode classNode, List<String> names, List<Object> classes) {
+		return skipToString(printTinyAsm(classNode, names, classes));
+	}
+
+	static String printTinyAsm(ClassNode classNode, List<String> names, List<Object> classes) {
+		return printTinyAsm(classNode, names, classes, null);
+	}
+
+	/**
+	 * Same as {@link #tinyasmToString(byte[], List, List)}, but the methods of
+	 * the class are printed in parallel on pool, for classes with many methods.
+	 */
+	public static String tinyasmToString(byte[] code, List<String> names, List<Object> classes, ForkJoinPool pool) {
+		return dumpCache.get(TinyAsmDumpCache.keyOf(code, names, classes), () -> skipToString(printTinyAsm(readClassNode(code), names, classes, pool)));
+	}
+
+	static String printTinyAsm(ClassNode classNode, List<String> names, List<Object> classes, ForkJoinPool pool) {
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		accept(classNode, new RefineClassVisitor(new TraceClassVisitor(null, new TinyASMifier(names, classes), pw), RefineClassVisitor.TINYASMIFIER), pool);
+		return sw.toString();
+	}
+
+	/** Reads code with expanded frames, as the printers here read classes. */
+	static ClassNode readClassNode(byte[] code) {
+		ClassNode classNode = new ClassNode();
+		new ClassReader(code).accept(classNode, ClassReader.EXPAND_FRAMES);
+		return classNode;
+	}
+
+	/**
+	 * Same as {@code classNode.accept(cv)}, but the bodies of the methods are
+	 * visited by tasks of pool, all finished before {@code cv.visitEnd()}. The
+	 * class events and {@code cv.visitMethod} stay in order on this thread, so cv
+	 * only has to make the visitors of different methods independent.
+	 */
+	static void accept(ClassNode classNode, ClassVisitor cv, ForkJoinPool pool) {
+		if (pool == null || classNode.methods.size() < 2) {
+			classNode.accept(cv);
+			return;
+		}
+		// everything up to the methods, which ClassNode visits last
+		classNode.accept(new ClassVisitor(Opcodes.ASM8, cv) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				return null;
+			}
+
+			@Override
+			public void visitEnd() {
+			}
+		});
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (MethodNode method : classNode.methods) {
+			String[] exceptions = method.exceptions == null ? null : method.exceptions.toArray(new String[0]);
+			MethodVisitor mv = cv.visitMethod(method.access, method.name, method.desc, method.signature, exceptions);
+			if (mv != null) {
+				tasks.add(pool.submit(() -> method.accept(mv)));
+			}
+		}
+		for (ForkJoinTask<?> task : tasks) {
+			task.join();
+		}
+		cv.visitEnd();
+	}
+
+	public static byte[] readClassBytes(String className) {
+		try (InputStream is = ClassLoader.getSystemResourceAsStream(className.replace('.', '/') + ".class")) {
+			if (is == null) {
+				throw new IOException("Class not found: " + className);
+			}
+			return readFully(is);
+		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
+
+	public static byte[] readFully(InputStream is) throws IOException {
+		byte[] buffer = new byte[8192];
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		int len;
+		while ((len = is.read(buffer)) > 0) {
+			os.write(buffer, 0, len);
+		}
+		return os.toByteArray();
+	}
 }
@@ -0,0 +1,20 @@
+package cn.sj1.tinyasm.tools;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.TreeMap;
+
+public class AnnotatedSample {
+
+	@Retention(RetentionPolicy.RUNTIME)
+	public @interface Kind {
+		Class<?> value();
+	}
+
+	@Kind(TreeMap.class)
+	Object map;
+
+	public Object getMap() {
+		return map;
+	}
+}
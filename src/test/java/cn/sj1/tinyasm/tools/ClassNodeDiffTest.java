@@ -0,0 +1,141 @@
+package cn.sj1.tinyasm.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.TypeReference;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+public class ClassNodeDiffTest {
+
+	/** Copies the class into a new constant pool, so only the pool order differs. */
+	static byte[] rewrite(byte[] code) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		new ClassReader(code).accept(cw, ClassReader.SKIP_DEBUG);
+		return cw.toByteArray();
+	}
+
+	/** Replaces the constant 10 by 11 in every method. */
+	static byte[] mutate(byte[] code) {
+		ClassWriter cw = new ClassWriter(0);
+		new ClassReader(code).accept(new ClassVisitor(Opcodes.ASM8, cw) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				return new MethodVisitor(Opcodes.ASM8, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+					@Override
+					public void visitIntInsn(int opcode, int operand) {
+						super.visitIntInsn(opcode, operand == 10 ? 11 : operand);
+					}
+				};
+			}
+		}, 0);
+		return cw.toByteArray();
+	}
+
+	@Test
+	public void testSame() {
+		for (Class<?> clazz : new Class<?>[] { SimpleSample.class, LabelSample.class, Pojo.class }) {
+			byte[] code = TinyAsmTestUtils.readClassBytes(clazz.getName());
+
+			assertEquals(0, ClassNodeDiff.diff(code, code).size());
+			assertEquals(0, ClassNodeDiff.diff(code, rewrite(code)).size());
+		}
+	}
+
+	@Test
+	public void testInstructionDiffers() {
+		byte[] code = TinyAsmTestUtils.readClassBytes(LabelSample.class.getName());
+		ClassNodeDiff.Result result = ClassNodeDiff.compare(code, mutate(code));
+
+		assertEquals(1, result.getDifferences().size());
+		assertEquals("cn/sj1/tinyasm/tools/LabelSample.t()V: instruction 0 expected <PUSH Integer 10> but was <PUSH Integer 11>", result.getDifferences().get(0));
+		assertEquals("cn/sj1/tinyasm/tools/LabelSample.t()V", result.getFirstDivergence().getMethod());
+		assertEquals(0, result.getFirstDivergence().getIndex());
+	}
+
+	@Test
+	public void testCanonicalConstants() {
+		MethodNode bipush = new MethodNode();
+		bipush.visitIntInsn(Opcodes.BIPUSH, 5);
+		bipush.visitInsn(Opcodes.IRETURN);
+		MethodNode iconst = new MethodNode();
+		iconst.visitInsn(Opcodes.ICONST_5);
+		iconst.visitInsn(Opcodes.IRETURN);
+		MethodNode ldc = new MethodNode();
+		ldc.visitLdcInsn(5L);
+		ldc.visitInsn(Opcodes.IRETURN);
+
+		assertEquals(ClassNodeDiff.hash(bipush), ClassNodeDiff.hash(iconst));
+		assertNotEquals(ClassNodeDiff.hash(bipush), ClassNodeDiff.hash(ldc));
+		assertEquals(ClassNodeDiff.instructions(bipush.instructions), ClassNodeDiff.instructions(iconst.instructions));
+	}
+
+	@Test
+	public void testSameHash() {
+		ClassNode expected = getStatic("Aa");
+		ClassNode actual = getStatic("BB");
+
+		assertEquals(ClassNodeDiff.hash(expected.methods.get(0)), ClassNodeDiff.hash(actual.methods.get(0)));
+		ClassNodeDiff.Result result = ClassNodeDiff.compare(expected, actual);
+		assertEquals("GETSTATIC q/X.Aa I", result.getFirstDivergence().getExpected());
+		assertEquals("GETSTATIC q/X.BB I", result.getFirstDivergence().getActual());
+	}
+
+	static ClassNode getStatic(String field) {
+		ClassNode classNode = new ClassNode();
+		classNode.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "q/X", null, "java/lang/Object", null);
+		MethodVisitor mv = classNode.visitMethod(Opcodes.ACC_STATIC, "get", "()I", null, null);
+		mv.visitFieldInsn(Opcodes.GETSTATIC, "q/X", field, "I");
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitMaxs(1, 0);
+		mv.visitEnd();
+		classNode.visitEnd();
+		return classNode;
+	}
+
+	@Test
+	public void testShorterMethod() {
+		ClassNode expected = ClassNodeDiff.read(TinyAsmTestUtils.readClassBytes(LabelSample.class.getName()));
+		ClassNode actual = ClassNodeDiff.read(TinyAsmTestUtils.readClassBytes(LabelSample.class.getName()));
+		MethodNode method = actual.methods.get(1);
+		method.instructions.remove(method.instructions.getLast());
+
+		ClassNodeDiff.Result result = ClassNodeDiff.compare(expected, actual);
+		assertEquals(null, result.getFirstDivergence().getActual());
+		assertEquals("RETURN", result.getFirstDivergence().getExpected());
+	}
+
+	@Test
+	public void testMemberDiffers() {
+		List<String> diffs = ClassNodeDiff.diff(TinyAsmTestUtils.readClassBytes(SimpleSample.class.getName()), TinyAsmTestUtils.readClassBytes(LabelSample.class.getName()));
+
+		assertTrue(diffs.contains("cn/sj1/tinyasm/tools/SimpleSample.i: missing field"));
+		assertTrue(diffs.contains("cn/sj1/tinyasm/tools/SimpleSample.t()V: unexpected method"));
+	}
+
+	@Test
+	public void testDroppedAttributes() {
+		ClassNode expected = getStatic("a");
+		expected.visitNestMember("q/X$Y");
+		expected.visitTypeAnnotation(TypeReference.newSuperTypeReference(-1).getValue(), null, "Lq/A;", true);
+		MethodNode method = expected.methods.get(0);
+		method.visitParameter("x", Opcodes.ACC_FINAL);
+		ClassNode actual = getStatic("a");
+
+		List<String> diffs = ClassNodeDiff.diff(expected, actual);
+		assertEquals(3, diffs.size());
+		assertTrue(diffs.get(0), diffs.get(0).startsWith("q/X: nestMembers"));
+		assertTrue(diffs.get(1), diffs.get(1).startsWith("q/X: typeAnnotations"));
+		assertTrue(diffs.get(2), diffs.get(2).startsWith("q/X.get()I: parameters"));
+	}
+}
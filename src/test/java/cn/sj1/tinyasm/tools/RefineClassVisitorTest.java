@@ -0,0 +1,78 @@
+package cn.sj1.tinyasm.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.util.TraceClassVisitor;
+
+public class RefineClassVisitorTest {
+
+	@Test
+	public void test_TinyASMifierSameAsExcludeLineNumber() {
+		String[] classes = { "cn.sj1.tinyasm.tools.SimpleSample", "cn.sj1.tinyasm.tools.LabelSample", "cn.sj1.tinyasm.tools.Pojo", "org.objectweb.asm.ClassReader",
+				"org.objectweb.asm.MethodWriter" };
+		for (String className : classes) {
+			byte[] code = TinyAsmTestUtils.readClassBytes(className);
+			StringWriter sw = new StringWriter();
+			new ClassReader(code).accept(new TraceClassVisitor(null, new TinyASMifier(new ArrayList<>(), new ArrayList<>()), new PrintWriter(sw)), ClassReader.EXPAND_FRAMES);
+
+			assertEquals(className, RefineCode.excludeLineNumber(sw.toString()), TinyAsmTestUtils.printTinyAsm(code, new ArrayList<>(), new ArrayList<>()));
+		}
+	}
+
+	@Test
+	public void test_ASMifier() {
+		String code = TinyAsmTestUtils.toString("org.objectweb.asm.ClassReader");
+
+		assertFalse(code.contains(".visitFrame("));
+		assertFalse(code.contains(".visitLineNumber("));
+		assertFalse(code.contains(".visitParameter("));
+		assertTrue(code.contains("methodVisitor.visitMaxs(1, 1);\n"));
+		assertFalse(code.replace("methodVisitor.visitMaxs(1, 1);\n", "").contains(".visitMaxs("));
+	}
+
+	@Test
+	public void test_ObjectArrayCasts() {
+		MethodNode method = new MethodNode(Opcodes.ACC_PUBLIC, "m", "()V", null, null);
+		MethodVisitor mv = new RefineClassVisitor.RefineMethodVisitor(method, RefineClassVisitor.ASMIFIER);
+		mv.visitTypeInsn(Opcodes.CHECKCAST, "[Ljava/lang/Object;");
+		mv.visitTypeInsn(Opcodes.CHECKCAST, "[Ljava/lang/Object;");
+		mv.visitInsn(Opcodes.POP);
+		mv.visitTypeInsn(Opcodes.CHECKCAST, "[Ljava/lang/Object;");
+		mv.visitTypeInsn(Opcodes.CHECKCAST, "java/lang/String");
+		mv.visitTypeInsn(Opcodes.CHECKCAST, "java/lang/String");
+
+		assertEquals(5, method.instructions.size());
+	}
+
+	@Test
+	public void test_ObjectArrayCastsAsText() {
+		String cast = "methodVisitor.visitTypeInsn(CHECKCAST, \"[Ljava/lang/Object;\");\n";
+		for (int casts = 1; casts <= 5; casts++) {
+			MethodNode method = new MethodNode(Opcodes.ACC_PUBLIC, "m", "()V", null, null);
+			MethodVisitor mv = new RefineClassVisitor.RefineMethodVisitor(method, RefineClassVisitor.ASMIFIER);
+			StringBuilder text = new StringBuilder();
+			for (int i = 0; i < casts; i++) {
+				mv.visitTypeInsn(Opcodes.CHECKCAST, "[Ljava/lang/Object;");
+				text.append(cast);
+			}
+			mv.visitLineNumber(10, new Label());
+			mv.visitTypeInsn(Opcodes.CHECKCAST, "[Ljava/lang/Object;");
+			text.append("methodVisitor.visitLineNumber(10, label0);\n").append(cast);
+
+			String refined = RefineCode.excludeLineNumber(text.toString());
+			assertEquals("casts " + casts, (refined.length() - refined.replace(cast, "").length()) / cast.length(), method.instructions.size());
+		}
+	}
+}
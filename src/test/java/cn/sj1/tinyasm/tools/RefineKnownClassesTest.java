@@ -0,0 +1,50 @@
+package cn.sj1.tinyasm.tools;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+public class RefineKnownClassesTest {
+
+	@Test
+	public void test_SameAsReplaceAll() {
+		Class<?>[] known = { Pojo.class, ClassReader.class, ClassWriter.class, Map.Entry.class };
+		for (String className : RefineLineWriterTest.CLASSES) {
+			String source = RefineCode.getDefaultRules().replaceAll(RefineRuleSetTest.asmifierOutput(className));
+
+			assertEquals(className, replaceAll(source, known, RefineCode.predefineKnownClasses),
+					new RefineKnownClasses(known, RefineCode.predefineKnownClasses).replace(source));
+		}
+	}
+
+	@Test
+	public void test_Replace() {
+		RefineKnownClasses classes = new RefineKnownClasses(new Class<?>[] { List.class, ArrayList.class, HashMap.class });
+
+		assertEquals("m(List.class, \"List\", \"Ljava/util/List\", ArrayList.class);\n",
+				classes.replace("m(\"Ljava/util/List;\", \"List\", \"Ljava/util/List\", \"java/util/ArrayList\");\n"));
+		assertEquals("\"\"HashMap.class\"", classes.replace("\"\"\"java/util/HashMap\"\""));
+		assertEquals("no quotes", classes.replace("no quotes"));
+	}
+
+	/** What refineCode did before, two replaceAll for every class. */
+	static String replaceAll(String source, Class<?>[]... classes) {
+		for (Class<?>[] list : classes) {
+			for (Class<?> clazz : list) {
+				String string = clazz.getName();
+				String iname = string.replace(".", "/");
+				String clzname = string.substring(string.lastIndexOf('.') + 1, string.length());
+				source = source.replaceAll("\\\"L" + iname + ";\\\"", clzname + ".class");
+				source = source.replaceAll("\\\"" + iname + "\\\"", clzname + ".class");
+			}
+		}
+		return source;
+	}
+}
@@ -0,0 +1,53 @@
+package cn.sj1.tinyasm.tools;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class RefineLineWriterTest {
+
+	static final String[] CLASSES = { "cn.sj1.tinyasm.tools.SimpleSample", "cn.sj1.tinyasm.tools.LabelSample", "cn.sj1.tinyasm.tools.Pojo", "org.objectweb.asm.ClassReader" };
+
+	@Test
+	public void test_SameAsString() {
+		for (String className : CLASSES) {
+			String input = RefineRuleSetTest.asmifierOutput(className);
+			// the class name is read from cw.visit
+			String cw = input.replace("classWriter.", "cw.");
+
+			StringWriter out = new StringWriter();
+			RefineCode.excludeLineNumber(new StringReader(input), out);
+			assertEquals(className, RefineCode.excludeLineNumber(input), out.toString());
+
+			out = new StringWriter();
+			RefineCode.excludeLocalVariable(new StringReader(input), out);
+			assertEquals(className, RefineCode.excludeLocalVariable(input), out.toString());
+
+			out = new StringWriter();
+			RefineCode.refineCode(new StringReader(cw), out, Pojo.class);
+			assertEquals(className, RefineCode.refineCode(cw, Pojo.class), out.toString());
+
+			out = new StringWriter();
+			RefineCode.refineCode(new StringReader(input), out);
+			assertEquals(className, RefineCode.refineCode(input), out.toString());
+		}
+	}
+
+	@Test
+	public void test_TwoLines() throws IOException {
+		String cast = RefineCode.OBJECT_ARRAY_CAST;
+		String input = "a\n" + cast + cast + cast + "b" + cast + cast + "c";
+		StringWriter out = new StringWriter();
+		try (RefineLineWriter writer = new RefineLineWriter.TwoLines(out, RefineCode.OBJECT_ARRAY_CASTS, cast, "CHECKCAST")) {
+			// a char at a time, lines come together in the writer
+			for (char c : input.toCharArray()) {
+				writer.write(c);
+			}
+		}
+		assertEquals(input.replaceAll(RefineCode.OBJECT_ARRAY_CASTS, cast), out.toString());
+	}
+}
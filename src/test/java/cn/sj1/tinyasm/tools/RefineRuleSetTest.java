@@ -0,0 +1,83 @@
+package cn.sj1.tinyasm.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.util.ASMifier;
+import org.objectweb.asm.util.TraceClassVisitor;
+
+public class RefineRuleSetTest {
+
+	@Test
+	public void test_SameAsSequentialReplaceAll() {
+		String[] classes = { "cn.sj1.tinyasm.tools.SimpleSample", "cn.sj1.tinyasm.tools.LabelSample", "cn.sj1.tinyasm.tools.Pojo", "org.objectweb.asm.ClassReader",
+				"org.objectweb.asm.MethodWriter", "org.objectweb.asm.Frame" };
+		for (String className : classes) {
+			String input = RefineCode.excludeLineNumber(asmifierOutput(className));
+			String expected = input;
+			for (int i = 0; i < RefineCode.getDefaultRules().getMatches().size(); i++) {
+				expected = expected.replaceAll(RefineCode.getDefaultRules().getMatches().get(i), RefineCode.getDefaultRules().getReplaces().get(i));
+			}
+			assertEquals(className, expected, RefineCode.replaceAll(input));
+		}
+	}
+
+	@Test
+	public void test_RequiredLiteral() {
+		assertEquals("methodVisitor.visitVarInsn(DLOAD, ", RefineRuleSet.requiredLiteral("methodVisitor\\.visitVarInsn\\(DLOAD, (\\d+)\\);\\n"));
+		assertEquals(".parameter(\"J\")", RefineRuleSet.requiredLiteral("\\.parameter\\(\"J\"\\)"));
+		assertEquals("abc", RefineRuleSet.requiredLiteral("abcd?e"));
+		assertEquals("", RefineRuleSet.requiredLiteral("(\\w+)\\.visit"));
+		assertEquals("visit", RefineRuleSet.requiredLiteral("a.visit(\\w+)"));
+		assertEquals("", RefineRuleSet.requiredLiteral("abc|def"));
+		assertEquals("xyz", RefineRuleSet.requiredLiteral("xyz(a|b)"));
+	}
+
+	@Test
+	public void test_ToBuilder() {
+		RefineRuleSet defaults = RefineCode.getDefaultRules();
+		RefineRuleSet rules = defaults.toBuilder().add("methodVisitor\\.DUP\\(\\);\\n", "methodVisitor.DUP();/*dup*/\n").build();
+
+		assertEquals(defaults.size() + 1, rules.size());
+		assertEquals("methodVisitor.DUP();\n", defaults.replaceAll("methodVisitor.visitInsn(DUP);\n"));
+		assertEquals("methodVisitor.DUP();/*dup*/\n", rules.replaceAll("methodVisitor.visitInsn(DUP);\n"));
+		assertTrue(RefineCode.refineCode(rules, asmifierOutput("cn.sj1.tinyasm.tools.Pojo")).contains("/*dup*/"));
+	}
+
+	@Test
+	public void test_Concurrent() throws Exception {
+		String input = RefineCode.excludeLineNumber(asmifierOutput("org.objectweb.asm.ClassReader"));
+		RefineRuleSet rules = RefineCode.getDefaultRules();
+		String expected = rules.replaceAll(input);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 16; i++) {
+				results.add(executor.submit(() -> rules.replaceAll(input)));
+			}
+			for (Future<String> result : results) {
+				assertEquals(expected, result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	static String asmifierOutput(String className) {
+		StringWriter sw = new StringWriter();
+		ClassReader cr = new ClassReader(TinyAsmTestUtils.readClassBytes(className));
+		cr.accept(new TraceClassVisitor(null, new ASMifier(), new PrintWriter(sw)), ClassReader.EXPAND_FRAMES);
+		return sw.toString();
+	}
+}
@@ -0,0 +1,44 @@
+package cn.sj1.tinyasm.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class RefineSectionsTest {
+
+	@Test
+	public void test_SameAsRefineCode() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			StringBuilder large = new StringBuilder();
+			for (String className : RefineLineWriterTest.CLASSES) {
+				String source = RefineRuleSetTest.asmifierOutput(className).replace("classWriter.", "cw.");
+				large.append(source);
+
+				assertEquals(className, RefineCode.refineCode(RefineCode.getDefaultRules(), source, Pojo.class),
+						RefineCode.refineCode(RefineCode.getDefaultRules(), source, pool, Pojo.class));
+			}
+			String source = large.toString();
+			assertTrue(RefineSections.split(source, RefineSections.SECTION_SIZE).size() > 4);
+			assertEquals(RefineCode.refineCode(RefineCode.getDefaultRules(), source), RefineCode.refineCode(RefineCode.getDefaultRules(), source, pool));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void test_Split() {
+		String source = "header\n{\nfield\n}\n{\nmethod\n}\n{\nmethod\n}\nend\n";
+		List<String> sections = RefineSections.split(source, 1);
+
+		assertEquals(3, sections.size());
+		assertEquals("header\n{\nfield\n}\n", sections.get(0));
+		assertEquals("{\nmethod\n}\n", sections.get(1));
+		assertEquals(source, String.join("", sections));
+		assertEquals(1, RefineSections.split(source, source.length()).size());
+	}
+}
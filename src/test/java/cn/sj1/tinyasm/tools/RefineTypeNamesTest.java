@@ -0,0 +1,77 @@
+package cn.sj1.tinyasm.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class RefineTypeNamesTest {
+
+	@Test
+	public void test_SameAsRegex() {
+		for (String className : RefineLineWriterTest.CLASSES) {
+			String source = RefineCode.getDefaultRules().replaceAll(RefineRuleSetTest.asmifierOutput(className));
+
+			assertEquals(className, matchTypeInternalNameToClassName(source), RefineTypeNames.internalNamesToClassNames(source));
+			assertEquals(className, matchTypeDescription(source), RefineTypeNames.typeDescriptions(source));
+		}
+	}
+
+	@Test
+	public void test_Random() {
+		String alphabet = "LLa/.;\"|_x \n";
+		Random random = new Random(17);
+		for (int i = 0; i < 100000; i++) {
+			char[] chars = new char[random.nextInt(24)];
+			for (int j = 0; j < chars.length; j++) {
+				chars[j] = alphabet.charAt(random.nextInt(alphabet.length()));
+			}
+			String source = new String(chars);
+
+			assertEquals(source, matchTypeInternalNameToClassName(source), RefineTypeNames.internalNamesToClassNames(source));
+			assertEquals(source, matchTypeDescription(source), RefineTypeNames.typeDescriptions(source));
+		}
+	}
+
+	@Test
+	public void test_TypeNames() {
+		assertEquals("m(\"java.util.List\", \"java/\", \"I\");", RefineTypeNames.internalNamesToClassNames("m(\"java/util/List\", \"java/\", \"I\");"));
+		assertEquals("m(java.util.List, Ljava/;, visitLdcInsn, Foo);", RefineTypeNames.typeDescriptions("m(Ljava/util/List;, Ljava/;, visitLdcInsn, LFoo;);"));
+
+		String unchanged = "methodVisitor.RETURN();\n";
+		assertSame(unchanged, RefineTypeNames.internalNamesToClassNames(unchanged));
+		assertSame(unchanged, RefineTypeNames.typeDescriptions(unchanged));
+	}
+
+	/** The regex version. */
+	static String matchTypeDescription(String input) {
+		StringBuilder source = new StringBuilder(input);
+		Matcher m = Pattern.compile("L[\\w|\\d]+(?:\\/[\\w|\\d|\\/]+)*;").matcher(source);
+		while (m.find()) {
+			for (int i = m.start(); i < m.end(); i++) {
+				if (source.charAt(i) == '/') {
+					source.setCharAt(i, '.');
+				}
+			}
+		}
+		return source.toString().replaceAll("L([\\w|\\d]+(?:\\.[\\w|\\d|\\/]+)*);", "$1");
+	}
+
+	/** The regex version. */
+	static String matchTypeInternalNameToClassName(String input) {
+		StringBuilder source = new StringBuilder(input);
+		Matcher m = Pattern.compile("\\\"[\\w|\\d]+(?:\\/[\\w|\\d|\\/]+)*\\\"").matcher(source);
+		while (m.find()) {
+			for (int i = m.start(); i < m.end(); i++) {
+				if (source.charAt(i) == '/') {
+					source.setCharAt(i, '.');
+				}
+			}
+		}
+		return source.toString();
+	}
+}
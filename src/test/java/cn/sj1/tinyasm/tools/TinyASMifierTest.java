@@ -1,8 +1,15 @@
 package cn.sj1.tinyasm.tools;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
+import org.objectweb.asm.tree.ClassNode;
 
 public class TinyASMifierTest {
 
@@ -35,4 +42,54 @@ public class TinyASMifierTest {
 		assertNotEquals("Code", codeExpected, codeActual);
 	}
 
+	/** TinyASMifier prints neither anonymous classes nor annotation types. */
+	static final String[] CLASSES = { "cn.sj1.tinyasm.tools.SimpleSample", "cn.sj1.tinyasm.tools.LabelSample", "cn.sj1.tinyasm.tools.Pojo",
+			"cn.sj1.tinyasm.tools.RefineLineWriter", "org.objectweb.asm.ClassReader", "org.objectweb.asm.MethodWriter" };
+
+	@Test
+	public void test_ClassNode() throws Exception {
+		for (String className : CLASSES) {
+			byte[] code = TinyAsmTestUtils.readClassBytes(className);
+			ClassNode classNode = TinyAsmTestUtils.readClassNode(code);
+			assertEquals(className, TinyAsmTestUtils.printTinyAsm(code, new ArrayList<>(), new ArrayList<>()),
+					TinyAsmTestUtils.printTinyAsm(classNode, new ArrayList<>(), new ArrayList<>()));
+			assertEquals(className, TinyAsmTestUtils.toString(className, code), TinyAsmTestUtils.toString(classNode));
+		}
+	}
+
+	@Test
+	public void test_ParallelMethods() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (String className : CLASSES) {
+				byte[] code = TinyAsmTestUtils.readClassBytes(className);
+				String expected = TinyAsmTestUtils.printTinyAsm(code, new ArrayList<>(), new ArrayList<>());
+				for (int i = 0; i < 3; i++) {
+					assertEquals(className, expected, TinyAsmTestUtils.printTinyAsm(TinyAsmTestUtils.readClassNode(code), new ArrayList<>(), new ArrayList<>(), pool));
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void test_AnnotationImports() throws Exception {
+		String codeActual = TinyAsmTestUtils.tinyasmToString(AnnotatedSample.class);
+
+		assertTrue(codeActual, codeActual.contains("import java.util.TreeMap;"));
+	}
+
+	@Test
+	public void test_StreamMethods() throws Exception {
+		for (Class<?> expectedClazz : new Class<?>[] { SimpleSample.class, LabelSample.class, Pojo.class }) {
+			byte[] code = TinyAsmTestUtils.readClassBytes(expectedClazz.getName());
+			StringWriter codeActual = new StringWriter();
+			TinyAsmTestUtils.tinyasmToWriter(code, codeActual);
+			String codeExpected = TinyAsmTestUtils.tinyasmToString(expectedClazz);
+
+			assertEquals("Code", codeExpected, codeActual.toString());
+		}
+	}
+
 }
@@ -0,0 +1,46 @@
+package cn.sj1.tinyasm.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TinyAsmBatchDumperTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testDumpDirectory() throws Exception {
+		File classes = folder.newFolder("classes");
+		File target = folder.newFolder("target");
+		for (Class<?> clazz : new Class<?>[] { SimpleSample.class, LabelSample.class, Pojo.class }) {
+			String path = clazz.getName().replace('.', '/') + ".class";
+			File file = new File(classes, path);
+			file.getParentFile().mkdirs();
+			Files.copy(clazz.getClassLoader().getResourceAsStream(path), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(2);
+		TinyAsmBatchDumper.Report report;
+		try {
+			report = new TinyAsmBatchDumper(target, pool).dump(classes);
+		} finally {
+			pool.shutdown();
+		}
+
+		assertEquals(3, report.getClasses());
+		assertEquals(0, report.getFailures().size());
+		File dump = new File(target, "cn/sj1/tinyasm/tools/SimpleSampleTinyAsmDump.java");
+		assertTrue(dump.exists());
+		assertEquals(TinyAsmTestUtils.tinyasmToString(SimpleSample.class), TinyAsmTestUtils.readJavaSourceFile(dump));
+	}
+
+}
@@ -0,0 +1,41 @@
+package cn.sj1.tinyasm.tools;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TinyAsmClassLoadersTest {
+
+	static final String SOURCE = "package cn.sj1.tinyasm.tools.generation;\n" //
+			+ "public class Hello { public String toString() { return \"hello\"; } }\n";
+
+	@Test
+	public void testCount() throws Exception {
+		TinyAsmClassLoaders loaders = new TinyAsmClassLoaders(ClassLoader.getSystemClassLoader());
+		TinyAsmClassLoaders.Generation generation = loaders.newGeneration();
+		Class<?> clazz = TinyAsmMemoryCompiler.compileAndLoad("cn.sj1.tinyasm.tools.generation.Hello", SOURCE, generation);
+
+		assertEquals("hello", clazz.getConstructor().newInstance().toString());
+		assertEquals(generation, clazz.getClassLoader());
+		assertEquals(1, loaders.getLiveLoaders());
+		assertEquals(1, loaders.getLiveClasses());
+	}
+
+	@Test
+	public void testUnload() throws Exception {
+		TinyAsmClassLoaders loaders = new TinyAsmClassLoaders(ClassLoader.getSystemClassLoader());
+		loadAndDrop(loaders);
+
+		for (int i = 0; i < 50 && loaders.getLiveLoaders() > 0; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertEquals(0, loaders.getLiveLoaders());
+		assertEquals(0, loaders.getLiveClasses());
+		assertEquals(1, loaders.getUnloadedLoaders());
+	}
+
+	private static void loadAndDrop(TinyAsmClassLoaders loaders) {
+		TinyAsmMemoryCompiler.compileAndLoad("cn.sj1.tinyasm.tools.generation.Hello", SOURCE, loaders.newGeneration());
+	}
+}
@@ -0,0 +1,44 @@
+package cn.sj1.tinyasm.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TinyAsmCompilerPoolTest {
+
+	@Test
+	public void testReuse() {
+		try (TinyAsmCompilerPool pool = new TinyAsmCompilerPool(2)) {
+			Object fileManager;
+			try (TinyAsmCompilerPool.Lease lease = pool.borrow()) {
+				fileManager = lease.getFileManager();
+			}
+			try (TinyAsmCompilerPool.Lease lease = pool.borrow()) {
+				assertSame(fileManager, lease.getFileManager());
+			}
+			assertEquals(1, pool.getCreated());
+			assertEquals(2, pool.getBorrows());
+			assertEquals(0, pool.getWaits());
+		}
+	}
+
+	@Test
+	public void testWait() throws Exception {
+		try (TinyAsmCompilerPool pool = new TinyAsmCompilerPool(1)) {
+			TinyAsmCompilerPool.Lease lease = pool.borrow();
+			Thread other = new Thread(() -> pool.borrow().close());
+			other.start();
+			while (pool.getWaiting() == 0) {
+				Thread.yield();
+			}
+			lease.close();
+			other.join();
+
+			assertEquals(1, pool.getCreated());
+			assertEquals(1, pool.getWaits());
+			assertTrue(pool.getMaxWaitNanos() > 0);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package cn.sj1.tinyasm.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class TinyAsmDumpCacheTest {
+
+	@Test
+	public void testKeyOf() {
+		byte[] code = TinyAsmTestUtils.readClassBytes(SimpleSample.class.getName());
+
+		assertEquals(TinyAsmDumpCache.keyOf(code, Collections.emptyList(), Collections.emptyList()), TinyAsmDumpCache.keyOf(code.clone(), Collections.emptyList(), Collections.emptyList()));
+		assertNotEquals(TinyAsmDumpCache.keyOf(code, Collections.emptyList(), Collections.emptyList()),
+				TinyAsmDumpCache.keyOf(code, Arrays.asList("pojo"), Arrays.asList(Pojo.class.getName())));
+		assertNotEquals(TinyAsmDumpCache.keyOf(code, Arrays.asList("pojo"), Arrays.asList(Pojo.class)),
+				TinyAsmDumpCache.keyOf(code, Arrays.asList("pojo"), Arrays.asList(Pojo.class.getName())));
+	}
+
+	@Test
+	public void testTinyasmToStringHit() {
+		TinyAsmDumpCache cache = TinyAsmTestUtils.getDumpCache();
+		String first = TinyAsmTestUtils.tinyasmToString(LabelSample.class);
+		long hits = cache.getHits();
+		String second = TinyAsmTestUtils.tinyasmToString(LabelSample.class);
+
+		assertSame(first, second);
+		assertEquals(hits + 1, cache.getHits());
+	}
+
+	@Test
+	public void testMemoryOnlyByDefault() {
+		assertNull(TinyAsmTestUtils.newDumpCache(null).getStore());
+	}
+
+	@Test
+	public void testEviction() {
+		TinyAsmDumpCache cache = new TinyAsmDumpCache(1);
+		TinyAsmDumpCache.Key first = TinyAsmDumpCache.keyOf(new byte[] { 1 }, Collections.emptyList(), Collections.emptyList());
+		TinyAsmDumpCache.Key second = TinyAsmDumpCache.keyOf(new byte[] { 2 }, Collections.emptyList(), Collections.emptyList());
+		cache.put(first, "first");
+		cache.put(second, "second");
+
+		assertEquals(1, cache.size());
+		assertEquals(null, cache.get(first));
+		assertEquals("second", cache.get(second));
+	}
+}
@@ -0,0 +1,139 @@
+package cn.sj1.tinyasm.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TinyAsmDumpStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static TinyAsmDumpCache.Key key(int i) {
+		return TinyAsmDumpCache.keyOf(new byte[] { (byte) i, (byte) (i >> 8) }, Collections.emptyList(), Collections.emptyList());
+	}
+
+	@Test
+	public void testPutGetReopen() throws Exception {
+		File directory = folder.newFolder();
+		TinyAsmDumpStore store = new TinyAsmDumpStore(directory);
+		store.put(key(1), "first");
+		store.put(key(2), "second 中文");
+		store.put(key(1), "first again");
+
+		assertEquals("first again", store.get(key(1)));
+		assertEquals("second 中文", store.get(key(2)));
+		assertNull(store.get(key(3)));
+		assertEquals(2, store.size());
+		store.close();
+
+		store = new TinyAsmDumpStore(directory);
+		assertEquals("first again", store.get(key(1)));
+		assertEquals("second 中文", store.get(key(2)));
+		assertEquals(2, store.size());
+		store.close();
+	}
+
+	@Test
+	public void testGrow() throws Exception {
+		File directory = folder.newFolder();
+		TinyAsmDumpStore store = new TinyAsmDumpStore(directory);
+		for (int i = 0; i < 3000; i++) {
+			store.put(key(i), "code" + i);
+		}
+		store.close();
+
+		store = new TinyAsmDumpStore(directory);
+		assertEquals(3000, store.size());
+		for (int i = 0; i < 3000; i++) {
+			assertEquals("code" + i, store.get(key(i)));
+		}
+		store.close();
+	}
+
+	@Test
+	public void testCompact() throws Exception {
+		File directory = folder.newFolder();
+		TinyAsmDumpStore store = new TinyAsmDumpStore(directory);
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < 100; i++) {
+				store.put(key(i), "code" + i + "." + round);
+			}
+		}
+		long live = store.dataSize() / 3;
+		store.compact();
+
+		assertEquals(live, store.dataSize());
+		assertEquals(100, store.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals("code" + i + ".2", store.get(key(i)));
+		}
+		store.put(key(100), "code100");
+		assertEquals("code100", store.get(key(100)));
+		store.close();
+	}
+
+	@Test
+	public void testCompactOnOpen() throws Exception {
+		File directory = folder.newFolder();
+		TinyAsmDumpStore store = new TinyAsmDumpStore(directory);
+		for (int round = 0; round < 3; round++) {
+			store.put(key(1), "code" + round);
+		}
+		store.close();
+
+		store = new TinyAsmDumpStore(directory);
+		assertEquals("code2".length(), store.dataSize());
+		assertEquals("code2", store.get(key(1)));
+		store.close();
+	}
+
+	@Test
+	public void testOtherGenerator() throws Exception {
+		File directory = folder.newFolder();
+		TinyAsmDumpStore store = new TinyAsmDumpStore(directory);
+		store.put(key(1), "first");
+		store.close();
+
+		store = new TinyAsmDumpStore(directory, new byte[32]);
+		assertNull(store.get(key(1)));
+		assertEquals(0, store.size());
+		assertEquals(0, store.dataSize());
+		store.close();
+	}
+
+	@Test
+	public void testResetGrownIndex() throws Exception {
+		File directory = folder.newFolder();
+		TinyAsmDumpStore store = new TinyAsmDumpStore(directory);
+		for (int i = 0; i < 3000; i++) {
+			store.put(key(i), "code" + i);
+		}
+		store.close();
+
+		byte[] generator = new byte[32];
+		store = new TinyAsmDumpStore(directory, generator);
+		store.put(key(1), "first");
+		store.close();
+
+		store = new TinyAsmDumpStore(directory, generator);
+		assertEquals(1, store.size());
+		assertEquals("first", store.get(key(1)));
+		store.close();
+	}
+
+	@Test
+	public void testInUse() throws Exception {
+		File directory = folder.newFolder();
+		TinyAsmDumpStore store = new TinyAsmDumpStore(directory);
+
+		assertNull(TinyAsmDumpStore.open(directory));
+		store.close();
+	}
+}
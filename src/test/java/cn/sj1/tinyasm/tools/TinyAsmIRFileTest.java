@@ -0,0 +1,148 @@
+package cn.sj1.tinyasm.tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.util.Textifier;
+import org.objectweb.asm.util.TraceClassVisitor;
+
+public class TinyAsmIRFileTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	static final String[] CLASSES = { "cn.sj1.tinyasm.tools.SimpleSample", "cn.sj1.tinyasm.tools.LabelSample", "cn.sj1.tinyasm.tools.Pojo",
+			"cn.sj1.tinyasm.tools.TinyAsmIRFileTest", "cn.sj1.tinyasm.tools.TinyAsmIRFile", "org.objectweb.asm.ClassReader", "org.objectweb.asm.Opcodes", "org.junit.Test" };
+
+	@Test
+	public void testWriteRead() throws Exception {
+		List<ClassNode> classes = new ArrayList<>();
+		for (String className : CLASSES) {
+			classes.add(read(TinyAsmTestUtils.readClassBytes(className), 0));
+		}
+		File file = folder.newFile();
+		TinyAsmIRFile.write(file, classes);
+
+		try (TinyAsmIRFile irFile = new TinyAsmIRFile(file)) {
+			assertEquals(CLASSES.length, irFile.size());
+			assertEquals("cn/sj1/tinyasm/tools/SimpleSample", irFile.getNames().get(0));
+			assertNull(irFile.get("not.There"));
+			for (int i = CLASSES.length - 1; i >= 0; i--) {
+				ClassNode read = irFile.get(CLASSES[i]);
+				assertEquals(CLASSES[i], textify(classes.get(i)), textify(read));
+				assertArrayEquals(CLASSES[i], rebuild(classes.get(i)), rebuild(read));
+			}
+		}
+	}
+
+	@Test
+	public void testExpandedFrames() throws Exception {
+		byte[] code = TinyAsmTestUtils.readClassBytes("cn.sj1.tinyasm.tools.LabelSample");
+		File file = folder.newFile();
+		TinyAsmIRFile.write(file, Arrays.asList(read(code, ClassReader.EXPAND_FRAMES)));
+
+		try (TinyAsmIRFile irFile = new TinyAsmIRFile(file)) {
+			assertEquals(TinyAsmTestUtils.printTinyAsm(code, new ArrayList<>(), new ArrayList<>()),
+					TinyAsmTestUtils.printTinyAsm(irFile.get(0), new ArrayList<>(), new ArrayList<>()));
+			assertEquals(textify(code, ClassReader.EXPAND_FRAMES), textify(irFile.get(0)));
+		}
+	}
+
+	@Test
+	public void testModule() throws Exception {
+		byte[] code = moduleInfo();
+		File file = folder.newFile();
+		TinyAsmIRFile.write(file, Arrays.asList(read(code, 0)));
+
+		try (TinyAsmIRFile irFile = new TinyAsmIRFile(file)) {
+			ClassNode read = irFile.get("module-info");
+			assertEquals(textify(code, 0), textify(read));
+			assertArrayEquals(code, rebuild(read));
+		}
+	}
+
+	@Test
+	public void testNotAnIRFile() throws Exception {
+		File file = folder.newFile();
+		Files.write(file.toPath(), "not a TinyAsm IR file".getBytes());
+		try (TinyAsmIRFile irFile = new TinyAsmIRFile(file)) {
+			fail();
+		} catch (IOException e) {
+		}
+	}
+
+	@Test
+	public void testVarints() {
+		TinyAsmIRFile.Output out = new TinyAsmIRFile.Output();
+		int[] ints = { 0, 1, -1, 63, -64, 64, 255, 256, Integer.MAX_VALUE, Integer.MIN_VALUE };
+		long[] longs = { 0, -1, Long.MAX_VALUE, Long.MIN_VALUE };
+		for (int value : ints) out.writeInt(value);
+		for (long value : longs) out.writeLong(value);
+
+		TinyAsmIRFile.Input in = new TinyAsmIRFile.Input(ByteBuffer.wrap(out.bytes, 0, out.size));
+		for (int value : ints) assertEquals(value, in.readInt());
+		for (long value : longs) assertEquals(value, in.readLong());
+		assertEquals(0, in.buffer.remaining());
+	}
+
+	static byte[] rebuild(ClassNode classNode) {
+		ClassWriter cw = new ClassWriter(0);
+		classNode.accept(cw);
+		return cw.toByteArray();
+	}
+
+	static ClassNode read(byte[] code, int parsingOptions) {
+		ClassNode classNode = new ClassNode();
+		new ClassReader(code).accept(classNode, parsingOptions);
+		return classNode;
+	}
+
+	static String textify(byte[] code, int parsingOptions) {
+		StringWriter sw = new StringWriter();
+		new ClassReader(code).accept(new TraceClassVisitor(null, new Textifier(), new PrintWriter(sw)), parsingOptions);
+		return sw.toString();
+	}
+
+	static String textify(ClassNode classNode) {
+		StringWriter sw = new StringWriter();
+		classNode.accept(new TraceClassVisitor(null, new Textifier(), new PrintWriter(sw)));
+		return sw.toString();
+	}
+
+	static byte[] moduleInfo() {
+		ClassWriter cw = new ClassWriter(0);
+		cw.visit(Opcodes.V9, Opcodes.ACC_MODULE, "module-info", null, null, null);
+		ModuleVisitor mv = cw.visitModule("cn.sj1.sample", Opcodes.ACC_OPEN, "1.0");
+		mv.visitMainClass("cn/sj1/sample/Main");
+		mv.visitPackage("cn/sj1/sample");
+		mv.visitRequire("java.base", Opcodes.ACC_MANDATED, null);
+		mv.visitRequire("java.logging", Opcodes.ACC_TRANSITIVE, "9");
+		mv.visitExport("cn/sj1/sample", 0);
+		mv.visitExport("cn/sj1/sample/spi", 0, "cn.sj1.other", "cn.sj1.third");
+		mv.visitUse("cn/sj1/sample/spi/Service");
+		mv.visitProvide("cn/sj1/sample/spi/Service", "cn/sj1/sample/Main");
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+}
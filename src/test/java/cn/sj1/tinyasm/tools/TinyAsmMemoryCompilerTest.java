@@ -0,0 +1,59 @@
+package cn.sj1.tinyasm.tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TinyAsmMemoryCompilerTest {
+
+	static final String SOURCE = "package cn.sj1.tinyasm.tools.memory;\n" //
+			+ "public class HelloTinyAsmDump {\n" //
+			+ "	static class Inner {\n" //
+			+ "		byte[] code() { return new byte[] { 1, 2, 3 }; }\n" //
+			+ "	}\n" //
+			+ "	public static byte[] dump() { return new Inner().code(); }\n" //
+			+ "}\n";
+
+	@Test
+	public void testCompile() {
+		Map<String, byte[]> classes = TinyAsmMemoryCompiler.compile("cn.sj1.tinyasm.tools.memory.HelloTinyAsmDump", SOURCE);
+
+		assertEquals(2, classes.size());
+		assertTrue(classes.containsKey("cn.sj1.tinyasm.tools.memory.HelloTinyAsmDump$Inner"));
+	}
+
+	@Test
+	public void testCompileAndLoad() {
+		Class<?> clazz = TinyAsmMemoryCompiler.compileAndLoad("cn.sj1.tinyasm.tools.memory.HelloTinyAsmDump", SOURCE);
+
+		assertArrayEquals(new byte[] { 1, 2, 3 }, TinyAsmTestUtils.invokeDump(clazz));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testCompileError() {
+		TinyAsmMemoryCompiler.compile("cn.sj1.tinyasm.tools.memory.Broken", "package cn.sj1.tinyasm.tools.memory;\npublic class Broken { int x = \"\"; }\n");
+	}
+
+	@Test
+	public void testCompileDumps() {
+		Map<String, String> sources = new LinkedHashMap<>();
+		for (int i = 0; i < 20; i++) {
+			sources.put("cn.sj1.tinyasm.tools.memory.Sample" + i, "package cn.sj1.tinyasm.tools.memory;\n" //
+					+ "public class Sample" + i + "TinyAsmDump {\n" //
+					+ "	public static byte[] dump() { return new Sample" + i + "TinyAsmDump().build(\"Sample" + i + "\"); }\n" //
+					+ "	public byte[] build(String className) { return className.getBytes(); }\n" //
+					+ "}\n");
+		}
+		Map<String, TinyAsmDumpHandle> handles = TinyAsmMemoryCompiler.compileDumps(sources);
+
+		assertEquals(20, handles.size());
+		TinyAsmDumpHandle handle = handles.get("cn.sj1.tinyasm.tools.memory.Sample7");
+		assertArrayEquals("Sample7".getBytes(), handle.dump());
+		assertArrayEquals("cn.sj1.tinyasm.tools.memory.Sample7".getBytes(), handle.build());
+	}
+}
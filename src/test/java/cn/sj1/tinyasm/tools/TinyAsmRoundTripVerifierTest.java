@@ -0,0 +1,99 @@
+package cn.sj1.tinyasm.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TinyAsmRoundTripVerifierTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final ForkJoinPool pool = new ForkJoinPool(2);
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	private File copySamples() throws Exception {
+		File classes = folder.newFolder("classes");
+		for (Class<?> clazz : new Class<?>[] { SimpleSample.class, LabelSample.class, Pojo.class }) {
+			String path = clazz.getName().replace('.', '/') + ".class";
+			File file = new File(classes, path);
+			file.getParentFile().mkdirs();
+			Files.copy(clazz.getClassLoader().getResourceAsStream(path), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return classes;
+	}
+
+	/** The whole round trip; the generated dumps need tinyasm-core to compile. */
+	@Test
+	public void testVerifyDumps() throws Exception {
+		try {
+			Class.forName("cn.sj1.tinyasm.core.ClassBuilder");
+		} catch (ClassNotFoundException e) {
+			Assume.assumeNoException("tinyasm-core is not on the class path", e);
+		}
+		TinyAsmRoundTripVerifier.Report report = new TinyAsmRoundTripVerifier(pool).verify(copySamples());
+
+		assertEquals(report.toString(), 3, report.getClasses());
+		assertTrue(report.getErrors().toString(), report.getErrors().isEmpty());
+		assertTrue(report.getDifferences().toString(), report.getDifferences().isEmpty());
+	}
+
+	@Test
+	public void testVerify() throws Exception {
+		TinyAsmRoundTripVerifier verifier = new TinyAsmRoundTripVerifier(pool) {
+			@Override
+			protected byte[] regenerate(byte[] code) {
+				return ClassNodeDiffTest.rewrite(code);
+			}
+		};
+		TinyAsmRoundTripVerifier.Report report = verifier.verify(copySamples());
+
+		assertEquals(3, report.getClasses());
+		assertTrue(report.isSame());
+	}
+
+	@Test
+	public void testVerifyDiffers() throws Exception {
+		TinyAsmRoundTripVerifier verifier = new TinyAsmRoundTripVerifier(pool) {
+			@Override
+			protected byte[] regenerate(byte[] code) {
+				return ClassNodeDiffTest.mutate(code);
+			}
+		};
+		TinyAsmRoundTripVerifier.Report report = verifier.verify(copySamples());
+
+		assertEquals(3, report.getClasses());
+		assertEquals(0, report.getErrors().size());
+		assertEquals(1, report.getDifferences().size());
+		assertEquals(1, report.getDifferences().get(LabelSample.class.getName()).size());
+	}
+
+	@Test
+	public void testVerifyFails() throws Exception {
+		TinyAsmRoundTripVerifier verifier = new TinyAsmRoundTripVerifier(pool) {
+			@Override
+			protected byte[] regenerate(byte[] code) {
+				throw new RuntimeException("no dump");
+			}
+		};
+		TinyAsmRoundTripVerifier.Report report = verifier.verify(copySamples());
+
+		assertEquals(0, report.getClasses());
+		assertEquals(3, report.getErrors().size());
+		assertTrue(report.getDifferences().isEmpty());
+	}
+}